@@ -0,0 +1,65 @@
+package com.bin.shortcmd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The audit entry every dispatched script line appends, from one thread as
+ * on the main thread and from several as with the async lane, while the
+ * writer thread drains to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuditLogBenchmark {
+    @Param({"drop", "block"})
+    public String overflow;
+
+    private BenchPlugin plugin;
+    private AuditLog log;
+    private AuditLog.Script script;
+
+    @Setup
+    public void setup() throws IOException {
+        plugin = new BenchPlugin();
+        plugin.getConfig().set("audit.enabled", true);
+        plugin.getConfig().set("audit.overflow", overflow);
+        plugin.getConfig().set("audit.compress", false);
+        log = new AuditLog(plugin);
+        script = log.open("CONSOLE", "deploy");
+    }
+
+    @TearDown
+    public void tearDown() {
+        log.shutdown();
+        plugin.cleanup();
+    }
+
+    @Benchmark
+    public void append() {
+        script.record(true, 42, AuditLog.EXECUTED, 1500, "lp user Steve parent add vip");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendContended() {
+        script.record(true, 42, AuditLog.EXECUTED, 1500, "lp user Steve parent add vip");
+    }
+}
@@ -0,0 +1,61 @@
+package com.bin.shortcmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A {@link ShortCmdPlugin} that is never enabled: configuration is set in
+ * code, data lives in a scratch directory, and the storage and message
+ * components are plugged in by the benchmark that needs them.
+ */
+final class BenchPlugin extends ShortCmdPlugin {
+    private final File dataFolder;
+    private ScriptStorage storage;
+    private MessageTemplates messages;
+
+    BenchPlugin() throws IOException {
+        this.dataFolder = Files.createTempDirectory("shortcmd-bench").toFile();
+        getLogger().setLevel(java.util.logging.Level.WARNING);
+    }
+
+    @Override
+    public File getDataFolder() {
+        return dataFolder;
+    }
+
+    @Override
+    public ScriptStorage getStorage() {
+        return storage;
+    }
+
+    void setStorage(ScriptStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public MessageTemplates getMessages() {
+        return messages;
+    }
+
+    void setMessages(MessageTemplates messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * Deletes the scratch directory.
+     */
+    void cleanup() {
+        delete(dataFolder);
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
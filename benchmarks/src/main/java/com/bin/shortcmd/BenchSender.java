@@ -0,0 +1,36 @@
+package com.bin.shortcmd;
+
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Console-like sender with every permission that only counts the messages
+ * it receives.
+ */
+final class BenchSender implements CommandSender {
+    private long received;
+
+    @Override
+    public void sendMessage(String message) {
+        received += message.length();
+    }
+
+    @Override
+    public boolean hasPermission(String name) {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "bench";
+    }
+
+    @Override
+    public Server getServer() {
+        throw new UnsupportedOperationException("No server in benchmarks");
+    }
+
+    long getReceived() {
+        return received;
+    }
+}
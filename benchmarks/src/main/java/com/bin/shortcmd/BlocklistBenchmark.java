@@ -0,0 +1,57 @@
+package com.bin.shortcmd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The blocklist check that runs for every dispatched script line, with hits
+ * and misses against blocklists of growing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlocklistBenchmark {
+    @Param({"1", "10", "100", "1000"})
+    public int size;
+
+    private Blocklist blocklist;
+    private String hit;
+    private String miss;
+
+    @Setup
+    public void setup() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            entries.add("blocked" + i);
+        }
+        blocklist = Blocklist.compile(entries);
+        hit = "/Blocked" + (size / 2) + " some arguments";
+        miss = "say hello world from a script line";
+    }
+
+    @Benchmark
+    public boolean hit() {
+        return blocklist.isBlocked(hit);
+    }
+
+    @Benchmark
+    public boolean miss() {
+        return blocklist.isBlocked(miss);
+    }
+}
@@ -0,0 +1,67 @@
+package com.bin.shortcmd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message rendering as done by {@code sendMessage}: template lookup and
+ * placeholder substitution, plus the one-off template parse on reload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+    private static final String PROGRESS = "&aExecuted &e%done%&a of &e%total%&a commands from &e%name%&a (%percent%%)";
+
+    private BenchPlugin plugin;
+    private MessageTemplates messages;
+    private BenchSender sender;
+
+    @Setup
+    public void setup() throws IOException {
+        plugin = new BenchPlugin();
+        plugin.getConfig().set("language", "en");
+        plugin.getConfig().set("messages.en.plain", "&aConfiguration reloaded");
+        plugin.getConfig().set("messages.en.progress", PROGRESS);
+        messages = new MessageTemplates(plugin);
+        sender = new BenchSender();
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.cleanup();
+    }
+
+    @Benchmark
+    public long renderPlain() {
+        sender.sendMessage(messages.render("plain"));
+        return sender.getReceived();
+    }
+
+    @Benchmark
+    public long renderPlaceholders() {
+        sender.sendMessage(messages.render("progress", "%done%", "120", "%total%", "500",
+            "%name%", "deploy", "%percent%", "24"));
+        return sender.getReceived();
+    }
+
+    @Benchmark
+    public Object parse() {
+        return MessageTemplates.Template.parse(PROGRESS);
+    }
+}
@@ -0,0 +1,100 @@
+package com.bin.shortcmd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Script parsing: streaming a downloaded body through {@link ScriptIngest}
+ * (the readLine/trim loop with hashing), compiling raw lines, and rebuilding
+ * a stored script from its saved lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptParseBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int lines;
+
+    private File directory;
+    private File target;
+    private byte[] body;
+    private List<String> rawLines;
+    private List<String> commands;
+    private String hash;
+    private long bytes;
+    private Blocklist blocklist;
+    private ScriptIngest inline;
+    private ScriptIngest onDisk;
+
+    @Setup
+    public void setup() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            if (i % 10 == 0) {
+                text.append("# step ").append(i).append('\n');
+            }
+            text.append("  give @p minecraft:stone ").append(i % 64 + 1).append("  \n");
+        }
+        body = text.toString().getBytes(StandardCharsets.UTF_8);
+        rawLines = Arrays.asList(text.toString().split("\n"));
+
+        blocklist = Blocklist.compile(Arrays.asList("op", "deop", "stop", "ban"));
+        CompiledScript compiled = CompiledScript.compile(rawLines, blocklist);
+        commands = new ArrayList<>(compiled.getCommands());
+        hash = compiled.getHash();
+        bytes = compiled.getBytes();
+
+        directory = Files.createTempDirectory("shortcmd-parse").toFile();
+        target = new File(directory, "script.txt");
+        inline = new ScriptIngest(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+        onDisk = inline.withInlineMaxLines(-1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchPlugin.delete(directory);
+    }
+
+    @Benchmark
+    public ScriptIngest.Result ingestInline() throws IOException {
+        return inline.ingest(new ByteArrayInputStream(body), target);
+    }
+
+    @Benchmark
+    public ScriptIngest.Result ingestToFile() throws IOException {
+        return onDisk.ingest(new ByteArrayInputStream(body), target);
+    }
+
+    @Benchmark
+    public CompiledScript compile() {
+        return CompiledScript.compile(rawLines, blocklist);
+    }
+
+    @Benchmark
+    public CompiledScript loadStored() {
+        return CompiledScript.load(commands, hash, bytes, blocklist);
+    }
+}
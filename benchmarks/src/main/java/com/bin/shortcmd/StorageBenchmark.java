@@ -0,0 +1,94 @@
+package com.bin.shortcmd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage save and load as the number of stored names grows: opening the
+ * store (snapshot read plus journal replay) and closing it (final compaction),
+ * and single mutations against an open store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int entries;
+
+    private BenchPlugin plugin;
+    private File directory;
+    private JournalScriptStorage open;
+    private StoredScript script;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        plugin = new BenchPlugin();
+        directory = new File(plugin.getDataFolder(), "storage");
+        CompiledScript compiled = CompiledScript.compile(Arrays.asList("say one", "say two",
+            "give @p minecraft:stone 1"), plugin.getBlocklist());
+        script = new StoredScript(compiled.getCommands(), compiled.getHash(), compiled.getBytes());
+
+        JournalScriptStorage storage = new JournalScriptStorage(plugin, directory);
+        for (int i = 0; i < entries; i++) {
+            if (i % 2 == 0) {
+                storage.putLink("link" + i, "https://example.com/scripts/" + i + ".txt");
+            } else {
+                storage.putScript("script" + i, script);
+            }
+        }
+        storage.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void openStore() throws IOException {
+        open = new JournalScriptStorage(plugin, new File(plugin.getDataFolder(), "mutations"));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStore() {
+        open.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plugin.cleanup();
+    }
+
+    @Benchmark
+    public int loadAndClose() throws IOException {
+        JournalScriptStorage storage = new JournalScriptStorage(plugin, directory);
+        int size = storage.getLinkNames().size() + storage.getScriptNames().size();
+        storage.close();
+        return size;
+    }
+
+    @Benchmark
+    public void putLink() {
+        open.putLink("link" + (counter++ % entries), "https://example.com/scripts/" + counter + ".txt");
+    }
+
+    @Benchmark
+    public void putScript() {
+        open.putScript("script" + (counter++ % entries), script);
+    }
+}
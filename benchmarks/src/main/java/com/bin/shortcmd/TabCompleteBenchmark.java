@@ -0,0 +1,73 @@
+package com.bin.shortcmd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /scmd storage <name>} tab completion through
+ * {@link ShortCmdCommand#onTabComplete} with many stored names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabCompleteBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int names;
+
+    private BenchPlugin plugin;
+    private JournalScriptStorage storage;
+    private ShortCmdCommand command;
+    private BenchSender sender;
+
+    @Setup
+    public void setup() throws IOException {
+        plugin = new BenchPlugin();
+        plugin.getConfig().set("tab-complete.limit", 50);
+        storage = new JournalScriptStorage(plugin, new File(plugin.getDataFolder(), "storage"));
+        for (int i = 0; i < names; i++) {
+            storage.putLink(String.format("script-%06d", i), "https://example.com/" + i);
+        }
+        plugin.setStorage(storage);
+        command = new ShortCmdCommand(plugin);
+        sender = new BenchSender();
+    }
+
+    @TearDown
+    public void tearDown() {
+        storage.close();
+        plugin.cleanup();
+    }
+
+    @Benchmark
+    public List<String> emptyPrefix() {
+        return command.onTabComplete(sender, null, "scmd", new String[]{"storage", ""});
+    }
+
+    @Benchmark
+    public List<String> narrowPrefix() {
+        return command.onTabComplete(sender, null, "scmd", new String[]{"storage", "script-0000"});
+    }
+
+    @Benchmark
+    public List<String> noMatch() {
+        return command.onTabComplete(sender, null, "scmd", new String[]{"storage", "zzz"});
+    }
+}
@@ -0,0 +1,10 @@
+package org.bukkit;
+
+public final class Bukkit {
+    private Bukkit() {
+    }
+
+    public static Server getServer() {
+        throw new UnsupportedOperationException("No server in benchmarks");
+    }
+}
@@ -0,0 +1,26 @@
+package org.bukkit;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.util.Collection;
+import java.util.UUID;
+
+public interface Server {
+    ConsoleCommandSender getConsoleSender();
+
+    boolean dispatchCommand(CommandSender sender, String commandLine);
+
+    BukkitScheduler getScheduler();
+
+    PluginManager getPluginManager();
+
+    Collection<? extends Player> getOnlinePlayers();
+
+    Player getPlayer(UUID id);
+
+    boolean isPrimaryThread();
+}
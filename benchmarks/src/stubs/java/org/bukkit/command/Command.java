@@ -0,0 +1,34 @@
+package org.bukkit.command;
+
+import java.util.Collections;
+import java.util.List;
+
+public abstract class Command {
+    private final String name;
+
+    protected Command(String name) {
+        this.name = name;
+    }
+
+    public abstract boolean execute(CommandSender sender, String commandLabel, String[] args);
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabel() {
+        return name;
+    }
+
+    public List<String> getAliases() {
+        return Collections.emptyList();
+    }
+
+    public boolean isRegistered() {
+        return true;
+    }
+
+    public boolean testPermissionSilent(CommandSender target) {
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+package org.bukkit.command;
+
+public class CommandException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CommandException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package org.bukkit.command;
+
+public interface CommandMap {
+    Command getCommand(String name);
+
+    boolean dispatch(CommandSender sender, String commandLine);
+}
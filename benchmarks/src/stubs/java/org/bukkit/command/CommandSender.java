@@ -0,0 +1,13 @@
+package org.bukkit.command;
+
+import org.bukkit.Server;
+
+public interface CommandSender {
+    void sendMessage(String message);
+
+    boolean hasPermission(String name);
+
+    String getName();
+
+    Server getServer();
+}
@@ -0,0 +1,23 @@
+package org.bukkit.command;
+
+public class PluginCommand extends Command {
+    private CommandExecutor executor;
+    private TabCompleter completer;
+
+    protected PluginCommand(String name) {
+        super(name);
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String commandLabel, String[] args) {
+        return executor != null && executor.onCommand(sender, this, commandLabel, args);
+    }
+
+    public void setExecutor(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    public void setTabCompleter(TabCompleter completer) {
+        this.completer = completer;
+    }
+}
@@ -0,0 +1,40 @@
+package org.bukkit.configuration;
+
+import java.util.List;
+import java.util.Set;
+
+public interface ConfigurationSection {
+    Set<String> getKeys(boolean deep);
+
+    boolean contains(String path);
+
+    Object get(String path);
+
+    void set(String path, Object value);
+
+    void addDefault(String path, Object value);
+
+    String getString(String path);
+
+    String getString(String path, String def);
+
+    boolean isString(String path);
+
+    int getInt(String path);
+
+    int getInt(String path, int def);
+
+    long getLong(String path);
+
+    long getLong(String path, long def);
+
+    boolean getBoolean(String path);
+
+    boolean getBoolean(String path, boolean def);
+
+    List<String> getStringList(String path);
+
+    ConfigurationSection getConfigurationSection(String path);
+
+    boolean isConfigurationSection(String path);
+}
@@ -0,0 +1,156 @@
+package org.bukkit.configuration.file;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A flat, map-backed configuration: paths are plain keys and sections are
+ * views over the keys that share a prefix.
+ */
+public abstract class FileConfiguration implements ConfigurationSection {
+    private final Map<String, Object> values;
+    private final String prefix;
+    private final FileConfigurationOptions options = new FileConfigurationOptions();
+
+    protected FileConfiguration() {
+        this(new LinkedHashMap<>(), "");
+    }
+
+    private FileConfiguration(Map<String, Object> values, String prefix) {
+        this.values = values;
+        this.prefix = prefix;
+    }
+
+    public FileConfigurationOptions options() {
+        return options;
+    }
+
+    public void save(File file) throws IOException {
+    }
+
+    @Override
+    public Set<String> getKeys(boolean deep) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String key : values.keySet()) {
+            if (key.startsWith(prefix)) {
+                String rest = key.substring(prefix.length());
+                int dot = rest.indexOf('.');
+                keys.add(deep || dot < 0 ? rest : rest.substring(0, dot));
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean contains(String path) {
+        return get(path) != null || isConfigurationSection(path);
+    }
+
+    @Override
+    public Object get(String path) {
+        return values.get(prefix + path);
+    }
+
+    @Override
+    public void set(String path, Object value) {
+        if (value == null) {
+            values.remove(prefix + path);
+        } else {
+            values.put(prefix + path, value);
+        }
+    }
+
+    @Override
+    public void addDefault(String path, Object value) {
+        values.putIfAbsent(prefix + path, value);
+    }
+
+    @Override
+    public String getString(String path) {
+        return getString(path, null);
+    }
+
+    @Override
+    public String getString(String path, String def) {
+        Object value = get(path);
+        return value != null ? value.toString() : def;
+    }
+
+    @Override
+    public boolean isString(String path) {
+        return get(path) instanceof String;
+    }
+
+    @Override
+    public int getInt(String path) {
+        return getInt(path, 0);
+    }
+
+    @Override
+    public int getInt(String path, int def) {
+        Object value = get(path);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    @Override
+    public long getLong(String path) {
+        return getLong(path, 0);
+    }
+
+    @Override
+    public long getLong(String path, long def) {
+        Object value = get(path);
+        return value instanceof Number ? ((Number) value).longValue() : def;
+    }
+
+    @Override
+    public boolean getBoolean(String path) {
+        return getBoolean(path, false);
+    }
+
+    @Override
+    public boolean getBoolean(String path, boolean def) {
+        Object value = get(path);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    @Override
+    public List<String> getStringList(String path) {
+        List<String> list = new ArrayList<>();
+        Object value = get(path);
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                list.add(String.valueOf(item));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public ConfigurationSection getConfigurationSection(String path) {
+        if (!isConfigurationSection(path)) {
+            return null;
+        }
+        return new FileConfiguration(values, prefix + path + ".") {
+        };
+    }
+
+    @Override
+    public boolean isConfigurationSection(String path) {
+        String section = prefix + path + ".";
+        for (String key : values.keySet()) {
+            if (key.startsWith(section)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,7 @@
+package org.bukkit.configuration.file;
+
+public class FileConfigurationOptions {
+    public FileConfigurationOptions copyDefaults(boolean value) {
+        return this;
+    }
+}
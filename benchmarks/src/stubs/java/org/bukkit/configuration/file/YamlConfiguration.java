@@ -0,0 +1,17 @@
+package org.bukkit.configuration.file;
+
+import java.io.File;
+import java.io.Reader;
+
+/**
+ * Does not parse YAML; benchmarks set their configuration in code.
+ */
+public class YamlConfiguration extends FileConfiguration {
+    public static YamlConfiguration loadConfiguration(File file) {
+        return new YamlConfiguration();
+    }
+
+    public static YamlConfiguration loadConfiguration(Reader reader) {
+        return new YamlConfiguration();
+    }
+}
@@ -0,0 +1,11 @@
+package org.bukkit.entity;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.UUID;
+
+public interface Player extends CommandSender {
+    UUID getUniqueId();
+
+    boolean isOnline();
+}
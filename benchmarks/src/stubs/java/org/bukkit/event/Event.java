@@ -0,0 +1,4 @@
+package org.bukkit.event;
+
+public abstract class Event {
+}
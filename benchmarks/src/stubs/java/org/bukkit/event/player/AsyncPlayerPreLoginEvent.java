@@ -0,0 +1,27 @@
+package org.bukkit.event.player;
+
+import org.bukkit.event.Event;
+
+import java.util.UUID;
+
+public class AsyncPlayerPreLoginEvent extends Event {
+    private final UUID uniqueId;
+    private final Result result;
+
+    public AsyncPlayerPreLoginEvent(UUID uniqueId, Result result) {
+        this.uniqueId = uniqueId;
+        this.result = result;
+    }
+
+    public UUID getUniqueId() {
+        return uniqueId;
+    }
+
+    public Result getLoginResult() {
+        return result;
+    }
+
+    public enum Result {
+        ALLOWED, KICK_FULL, KICK_BANNED, KICK_WHITELIST, KICK_OTHER
+    }
+}
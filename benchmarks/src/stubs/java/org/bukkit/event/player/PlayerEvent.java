@@ -0,0 +1,16 @@
+package org.bukkit.event.player;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+
+public abstract class PlayerEvent extends Event {
+    private final Player player;
+
+    protected PlayerEvent(Player player) {
+        this.player = player;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+}
@@ -0,0 +1,9 @@
+package org.bukkit.event.server;
+
+import org.bukkit.plugin.Plugin;
+
+public class PluginEnableEvent extends PluginEvent {
+    public PluginEnableEvent(Plugin plugin) {
+        super(plugin);
+    }
+}
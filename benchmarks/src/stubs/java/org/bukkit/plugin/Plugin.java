@@ -0,0 +1,20 @@
+package org.bukkit.plugin;
+
+import org.bukkit.Server;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+public interface Plugin {
+    PluginDescriptionFile getDescription();
+
+    File getDataFolder();
+
+    Logger getLogger();
+
+    Server getServer();
+
+    boolean isEnabled();
+
+    String getName();
+}
@@ -0,0 +1,7 @@
+package org.bukkit.plugin;
+
+import org.bukkit.event.Listener;
+
+public interface PluginManager {
+    void registerEvents(Listener listener, Plugin plugin);
+}
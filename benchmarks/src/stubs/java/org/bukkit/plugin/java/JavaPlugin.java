@@ -0,0 +1,76 @@
+package org.bukkit.plugin.java;
+
+import org.bukkit.Server;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * A plugin that is never enabled by a server. Subclasses in benchmarks
+ * override {@link #getDataFolder()} to point at a scratch directory.
+ */
+public abstract class JavaPlugin implements Plugin {
+    private final FileConfiguration config = new YamlConfiguration();
+    private final Logger logger = Logger.getLogger(getClass().getSimpleName());
+
+    @Override
+    public File getDataFolder() {
+        return new File("target/plugin-data");
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    @Override
+    public Server getServer() {
+        throw new UnsupportedOperationException("No server in benchmarks");
+    }
+
+    @Override
+    public PluginDescriptionFile getDescription() {
+        return new PluginDescriptionFile(getName(), "bench");
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    public FileConfiguration getConfig() {
+        return config;
+    }
+
+    public void reloadConfig() {
+    }
+
+    public void saveConfig() {
+    }
+
+    public void saveResource(String resourcePath, boolean replace) {
+    }
+
+    public PluginCommand getCommand(String name) {
+        return null;
+    }
+
+    public void onEnable() {
+    }
+
+    public void onDisable() {
+    }
+
+    protected void setEnabled(boolean enabled) {
+    }
+}
@@ -0,0 +1,22 @@
+package org.bukkit.util;
+
+import java.util.Collection;
+
+public final class StringUtil {
+    private StringUtil() {
+    }
+
+    public static <T extends Collection<? super String>> T copyPartialMatches(String token, Iterable<String> originals,
+                                                                              T collection) {
+        for (String string : originals) {
+            if (startsWithIgnoreCase(string, token)) {
+                collection.add(string);
+            }
+        }
+        return collection;
+    }
+
+    public static boolean startsWithIgnoreCase(String string, String prefix) {
+        return string.length() >= prefix.length() && string.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
@@ -0,0 +1,172 @@
+package com.bin.shortcmd;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Runs script lines whose command is listed in {@code dispatch.async-commands}
+ * on a small worker pool instead of the main thread, for commands that only
+ * talk to a database or another thread-safe API, such as permission or
+ * economy plugins.
+ * <p>
+ * Every script gets its own {@link Lane}, which runs its lines one after
+ * another in script order; lanes of different scripts run in parallel.
+ * {@link ScriptJob} holds back a line that must run on the main thread until
+ * the async lines before it are done, so a script sees the same order as if
+ * every line ran on the main thread.
+ */
+public class AsyncCommandLane {
+    /** Lines a lane runs before letting other lanes have the worker. */
+    private static final int BATCH = 64;
+
+    private final ShortCmdPlugin plugin;
+    private final ExecutorService workers;
+    private final Metrics.Counter lines;
+    private volatile Set<String> labels;
+    private volatile int maxPending;
+
+    public AsyncCommandLane(ShortCmdPlugin plugin, int threads) {
+        this.plugin = plugin;
+        this.lines = plugin.getMetrics().counter("shortcmd_async_lines_total", "Script lines run off the main thread");
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "ShortCmd-Async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        reload();
+    }
+
+    public void reload() {
+        Set<String> whitelist = new HashSet<>();
+        List<String> configured = plugin.getConfig().getStringList("dispatch.async-commands");
+        for (String label : configured) {
+            String trimmed = label.trim();
+            if (!trimmed.isEmpty()) {
+                whitelist.add(trimmed.toLowerCase(Locale.ENGLISH));
+            }
+        }
+        labels = whitelist;
+        maxPending = Math.max(1, plugin.getConfig().getInt("dispatch.async-max-pending", 1024));
+    }
+
+    /**
+     * Whether any command may run off the main thread at all.
+     */
+    public boolean isEnabled() {
+        return !labels.isEmpty();
+    }
+
+    /**
+     * Whether a command called {@code label} or {@code name} may run off the
+     * main thread.
+     */
+    public boolean accepts(String label, String name) {
+        Set<String> whitelist = labels;
+        return whitelist.contains(label) || whitelist.contains(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Opens the lane of a new script.
+     */
+    public Lane open() {
+        return new Lane();
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The async lines of one script, run in the order they were submitted.
+     * {@link #submit}, {@link #isIdle} and {@link #isFull} are called from the
+     * main thread.
+     */
+    public final class Lane {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        private Lane() {
+        }
+
+        public void submit(Runnable task) {
+            tasks.add(task);
+            if (pending.getAndIncrement() == 0) {
+                schedule();
+            }
+        }
+
+        /**
+         * Whether every submitted line has run.
+         */
+        public boolean isIdle() {
+            return pending.get() == 0;
+        }
+
+        /**
+         * Whether {@code dispatch.async-max-pending} lines are waiting, so the
+         * script should not hand over more for now.
+         */
+        public boolean isFull() {
+            return pending.get() >= maxPending;
+        }
+
+        /**
+         * Drops the lines that have not started yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: forget the remaining lines
+                tasks.clear();
+                pending.set(0);
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable task = tasks.poll();
+                boolean more;
+                try {
+                    if (task != null && !cancelled) {
+                        task.run();
+                        lines.increment();
+                    }
+                } catch (Throwable e) {
+                    // Also errors: a line that never counts down keeps its script waiting forever
+                    plugin.getLogger().log(Level.WARNING, "Async script line failed", e);
+                } finally {
+                    more = pending.decrementAndGet() != 0;
+                }
+                if (!more) {
+                    return;
+                }
+            }
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.bin.shortcmd;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A record of every script line ShortCmd dispatches, written to
+ * {@code audit/audit.log} when {@code audit.enabled} is set: when it ran, who
+ * triggered it, whether it ran as the console or the player, the script and
+ * line it came from, whether it was executed, blocked or failed, and how long
+ * it took.
+ * <p>
+ * Lines are appended from the main thread and the async lane to a bounded
+ * ring buffer of {@code audit.buffer-size} preallocated slots, without locks
+ * or allocation; a single {@code ShortCmd-Audit} thread formats and writes
+ * them. When the buffer is full, {@code audit.overflow} either drops the
+ * entry, counted in {@code shortcmd_audit_dropped_total}, or makes the caller
+ * wait for the writer, for at most {@link #MAX_BLOCK_NANOS} and not at all
+ * while the writer cannot write the file. The log is rotated at {@code audit.max-file-mb}, old
+ * files are gzipped with {@code audit.compress} and only the newest
+ * {@code audit.max-files} are kept.
+ */
+public class AuditLog {
+    public static final byte EXECUTED = 0;
+    public static final byte BLOCKED = 1;
+    public static final byte FAILED = 2;
+
+    private static final String[] RESULTS = {"executed", "blocked", "failed"};
+    private static final Pattern ROTATED = Pattern.compile("audit-(\\d{8}-\\d{6})(?:-(\\d+))?\\.log(\\.gz)?");
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long MAX_BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ShortCmdPlugin plugin;
+    private final File directory;
+    private final File file;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final Metrics.Counter written;
+    private final Metrics.Counter dropped;
+    private final Thread writer;
+    private volatile boolean enabled;
+    private volatile boolean block;
+    private volatile boolean running = true;
+    private volatile boolean failing;
+    private volatile long maxFileBytes;
+    private volatile int maxFiles;
+    private volatile boolean compress;
+
+    // Writer thread only
+    private long head;
+    private Writer out;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ROOT);
+    private final StringBuilder line = new StringBuilder(256);
+
+    public AuditLog(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "audit");
+        this.file = new File(directory, "audit.log");
+        this.written = plugin.getMetrics().counter("shortcmd_audit_lines_total", "Script lines written to the audit log");
+        this.dropped = plugin.getMetrics().counter("shortcmd_audit_dropped_total",
+            "Audit entries dropped because the buffer was full");
+
+        int capacity = Integer.highestOneBit(Math.max(2, plugin.getConfig().getInt("audit.buffer-size", 8192) - 1)) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+        this.mask = capacity - 1;
+        reload();
+
+        this.writer = new Thread(this::drainLoop, "ShortCmd-Audit");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Applies the {@code audit} settings; {@code audit.buffer-size} only
+     * changes on restart.
+     */
+    public void reload() {
+        enabled = plugin.getConfig().getBoolean("audit.enabled", false);
+        block = "block".equalsIgnoreCase(plugin.getConfig().getString("audit.overflow", "drop"));
+        maxFileBytes = Math.max(1, plugin.getConfig().getLong("audit.max-file-mb", 16)) * 1024 * 1024;
+        maxFiles = Math.max(0, plugin.getConfig().getInt("audit.max-files", 10));
+        compress = plugin.getConfig().getBoolean("audit.compress", true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the audit trail of one script run.
+     */
+    public Script open(String sender, String source) {
+        return new Script(sender, source);
+    }
+
+    /**
+     * Queues one entry; may be called from any thread.
+     */
+    public void append(String sender, boolean console, String source, int lineNumber, byte result, long nanos,
+                       String command) {
+        if (!enabled) {
+            return;
+        }
+        long time = System.currentTimeMillis();
+        long deadline = 0;
+        while (!offer(time, sender, console, source, lineNumber, result, nanos, command)) {
+            if (deadline == 0) {
+                deadline = System.nanoTime() + MAX_BLOCK_NANOS;
+            }
+            if (!block || !running || failing || System.nanoTime() - deadline > 0) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    private boolean offer(long time, String sender, boolean console, String source, int lineNumber, byte result,
+                          long nanos, String command) {
+        long position = tail.get();
+        Slot slot;
+        while (true) {
+            slot = slots[(int) position & mask];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        slot.time = time;
+        slot.sender = sender;
+        slot.console = console;
+        slot.source = source;
+        slot.line = lineNumber;
+        slot.result = result;
+        slot.nanos = nanos;
+        slot.command = command;
+        slot.sequence = position + 1;
+        return true;
+    }
+
+    /**
+     * Writes out the remaining entries and stops the writer thread.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean stopping = !running;
+            try {
+                int count = drain();
+                failing = false;
+                if (out != null) {
+                    if (count == 0) {
+                        out.flush();
+                    }
+                    if (file.length() >= maxFileBytes) {
+                        rotate();
+                    }
+                }
+                if (count == 0) {
+                    if (stopping) {
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_NANOS);
+                }
+            } catch (IOException e) {
+                failing = true;
+                plugin.getLogger().log(Level.WARNING, "Could not write the audit log", e);
+                closeQuietly();
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+        closeQuietly();
+    }
+
+    private int drain() throws IOException {
+        int count = 0;
+        while (true) {
+            Slot slot = slots[(int) head & mask];
+            if (slot.sequence != head + 1) {
+                break;
+            }
+            write(slot);
+            slot.sender = null;
+            slot.source = null;
+            slot.command = null;
+            slot.sequence = head + slots.length;
+            head++;
+            count++;
+        }
+        if (count > 0) {
+            written.add(count);
+        }
+        return count;
+    }
+
+    private void write(Slot slot) throws IOException {
+        if (out == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                StandardCharsets.UTF_8), 65536);
+        }
+        line.setLength(0);
+        line.append(timeFormat.format(new Date(slot.time))).append('\t')
+            .append(slot.sender).append('\t')
+            .append(slot.console ? "console" : "player").append('\t')
+            .append(slot.source).append('\t')
+            .append(slot.line).append('\t')
+            .append(RESULTS[slot.result]).append('\t')
+            .append(slot.nanos / 1000).append('\t')
+            .append(slot.command).append('\n');
+        out.append(line);
+    }
+
+    /**
+     * Moves the current log to {@code audit-<time>.log}, gzipping it with
+     * {@code audit.compress}, and deletes the oldest rotated logs.
+     */
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        File rotated = new File(directory, "audit-" + stamp + ".log");
+        for (int i = 1; rotated.exists() || new File(rotated.getPath() + ".gz").exists(); i++) {
+            rotated = new File(directory, "audit-" + stamp + "-" + i + ".log");
+        }
+        Files.move(file.toPath(), rotated.toPath());
+        if (compress) {
+            File gzipped = new File(rotated.getPath() + ".gz");
+            try (InputStream in = new FileInputStream(rotated);
+                 OutputStream gz = new GZIPOutputStream(new FileOutputStream(gzipped), 65536)) {
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    gz.write(buffer, 0, read);
+                }
+            }
+            Files.delete(rotated.toPath());
+        }
+
+        File[] old = directory.listFiles((dir, name) -> ROTATED.matcher(name).matches());
+        if (old == null || old.length <= maxFiles) {
+            return;
+        }
+        Arrays.sort(old, Comparator.comparing(AuditLog::rotatedAt).thenComparingInt(AuditLog::rotatedIndex));
+        for (int i = 0; i < old.length - maxFiles; i++) {
+            if (!old[i].delete()) {
+                plugin.getLogger().warning("Could not delete " + old[i]);
+            }
+        }
+    }
+
+    /**
+     * The {@code yyyyMMdd-HHmmss} stamp of a rotated log, which sorts by time.
+     */
+    private static String rotatedAt(File rotated) {
+        Matcher matcher = ROTATED.matcher(rotated.getName());
+        return matcher.matches() ? matcher.group(1) : "";
+    }
+
+    /**
+     * The {@code -n} suffix of a log rotated more than once in a second, 0
+     * for the first one.
+     */
+    private static int rotatedIndex(File rotated) {
+        Matcher matcher = ROTATED.matcher(rotated.getName());
+        return matcher.matches() && matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Nothing more to do, the entries are lost either way
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * One preallocated entry; the fields are published by the write to
+     * {@link #sequence}.
+     */
+    private static final class Slot {
+        private volatile long sequence;
+        private long time;
+        private String sender;
+        private boolean console;
+        private String source;
+        private int line;
+        private byte result;
+        private long nanos;
+        private String command;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * The audit trail of one script run, numbering its lines in the order
+     * they are handed to the main thread or the async lane. Must be advanced
+     * from the main thread.
+     */
+    public final class Script {
+        private final String sender;
+        private final String source;
+        private int line;
+
+        private Script(String sender, String source) {
+            this.sender = sender;
+            this.source = source;
+        }
+
+        /**
+         * Starts numbering after the {@code count} lines a resumed run skips.
+         */
+        public Script skip(int count) {
+            line += count;
+            return this;
+        }
+
+        /**
+         * Returns the number of the next line.
+         */
+        public int next() {
+            return ++line;
+        }
+
+        public void record(boolean console, int lineNumber, byte result, long nanos, String command) {
+            append(sender, console, source, lineNumber, result, nanos, command);
+        }
+    }
+}
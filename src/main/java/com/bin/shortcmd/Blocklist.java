@@ -0,0 +1,136 @@
+package com.bin.shortcmd;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix trie built from {@code blocked-commands}. A command is
+ * blocked when its first token starts with one of the entries, ignoring case,
+ * a leading {@code /} and a namespace such as {@code minecraft:}. Matching
+ * walks the original string in place and does not allocate.
+ */
+public final class Blocklist {
+    private static final Node EMPTY_NODE = new Node(new char[0], new Node[0], false);
+
+    private final Node root;
+    private final int size;
+
+    private Blocklist(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public static Blocklist compile(Collection<String> entries) {
+        Builder root = new Builder();
+        int size = 0;
+        for (String entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            String normalized = entry.trim().toLowerCase(Locale.ROOT);
+            while (normalized.startsWith("/")) {
+                normalized = normalized.substring(1);
+            }
+            if (normalized.isEmpty()) {
+                continue;
+            }
+
+            Builder node = root;
+            for (int i = 0; i < normalized.length(); i++) {
+                node = node.children.computeIfAbsent(normalized.charAt(i), c -> new Builder());
+            }
+            if (!node.terminal) {
+                node.terminal = true;
+                size++;
+            }
+        }
+        return new Blocklist(root.freeze(), size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isBlocked(String command) {
+        if (size == 0 || command == null) {
+            return false;
+        }
+
+        int length = command.length();
+        int start = 0;
+        while (start < length && (Character.isWhitespace(command.charAt(start)) || command.charAt(start) == '/')) {
+            start++;
+        }
+        int end = start;
+        int namespaceEnd = -1;
+        while (end < length && !Character.isWhitespace(command.charAt(end))) {
+            if (command.charAt(end) == ':') {
+                namespaceEnd = end;
+            }
+            end++;
+        }
+
+        if (matches(command, start, end)) {
+            return true;
+        }
+        return namespaceEnd >= 0 && matches(command, namespaceEnd + 1, end);
+    }
+
+    private boolean matches(String command, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end; i++) {
+            node = node.child(Character.toLowerCase(command.charAt(i)));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final boolean terminal;
+
+        private Node(char[] keys, Node[] children, boolean terminal) {
+            this.keys = keys;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    private static final class Builder {
+        private final TreeMap<Character, Builder> children = new TreeMap<>();
+        private boolean terminal;
+
+        private Node freeze() {
+            if (children.isEmpty() && !terminal) {
+                return EMPTY_NODE;
+            }
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().freeze();
+                i++;
+            }
+            return new Node(keys, nodes, terminal);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.bin.shortcmd;
+
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+
+/**
+ * Runs queued scripts from a repeating main-thread task. Each tick spends at
+ * most {@code dispatch.tick-budget-ms} milliseconds (and optionally at most
+ * {@code dispatch.max-commands-per-tick} lines), sharing the budget between
+ * all queued scripts in round-robin order. Lines handed to a script's
+ * {@link AsyncCommandLane.Lane} count against the line limit but take next
+ * to no main-thread time.
+ */
+public class CommandDispatcher implements Runnable {
+    private final ShortCmdPlugin plugin;
+    private final Deque<ScriptJob> jobs = new ArrayDeque<>();
+    private BukkitTask task;
+    private long budgetNanos;
+    private int maxCommandsPerTick;
+    private final Metrics.Histogram tickTime;
+    private final Metrics.Histogram scriptTime;
+    private final Metrics.Counter completed;
+    private final Metrics.Counter dropped;
+    private final Metrics.Counter cancelled;
+
+    public CommandDispatcher(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        Metrics metrics = plugin.getMetrics();
+        this.tickTime = metrics.histogram("shortcmd_dispatch_tick_seconds", "Main-thread time per dispatcher tick");
+        this.scriptTime = metrics.histogram("shortcmd_script_main_thread_seconds",
+            "Total main-thread time consumed per script");
+        this.completed = metrics.counter("shortcmd_scripts_total", "Scripts finished by the dispatcher",
+            "result", "completed");
+        this.dropped = metrics.counter("shortcmd_scripts_total", "Scripts finished by the dispatcher",
+            "result", "dropped");
+        this.cancelled = metrics.counter("shortcmd_scripts_total", "Scripts finished by the dispatcher",
+            "result", "cancelled");
+        reload();
+    }
+
+    public void reload() {
+        budgetNanos = Math.max(1, plugin.getConfig().getLong("dispatch.tick-budget-ms", 10)) * 1_000_000L;
+        maxCommandsPerTick = Math.max(0, plugin.getConfig().getInt("dispatch.max-commands-per-tick", 0));
+    }
+
+    /**
+     * Queues a script. Must be called from the main thread.
+     */
+    public void submit(ScriptJob job) {
+        jobs.addLast(job);
+        if (task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+        }
+    }
+
+    public int getQueuedJobs() {
+        return jobs.size();
+    }
+
+    @Override
+    public void run() {
+        long started = System.nanoTime();
+        long deadline = started + budgetNanos;
+        int dispatched = 0;
+        int idle = 0;
+
+        while (!jobs.isEmpty() && idle < jobs.size()) {
+            ScriptJob job = jobs.pollFirst();
+            long now = System.nanoTime();
+
+            if (job.isCancelled() || job.isSenderGone()) {
+                job.close();
+                (job.isCancelled() ? cancelled : dropped).increment();
+                scriptTime.record(job.getMainThreadNanos());
+                end(job);
+                continue;
+            }
+            if (!job.isDue(now)) {
+                jobs.addLast(job);
+                idle++;
+                continue;
+            }
+            if (job.hasNext()) {
+                try {
+                    job.dispatchNext(now);
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, "Script line failed", e);
+                }
+                dispatched++;
+                idle = 0;
+            }
+            if (job.hasNext()) {
+                jobs.addLast(job);
+            } else {
+                finish(job);
+            }
+
+            if (System.nanoTime() - deadline >= 0
+                || (maxCommandsPerTick > 0 && dispatched >= maxCommandsPerTick)) {
+                break;
+            }
+        }
+
+        if (jobs.isEmpty() && task != null) {
+            task.cancel();
+            task = null;
+        }
+        tickTime.record(System.nanoTime() - started);
+    }
+
+    private void finish(ScriptJob job) {
+        job.close();
+        completed.increment();
+        scriptTime.record(job.getMainThreadNanos());
+        try {
+            job.complete();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Script completion callback failed", e);
+        }
+        end(job);
+    }
+
+    private void end(ScriptJob job) {
+        try {
+            job.end();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "Script end callback failed", e);
+        }
+    }
+
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (ScriptJob job : jobs) {
+            job.close();
+        }
+        jobs.clear();
+    }
+}
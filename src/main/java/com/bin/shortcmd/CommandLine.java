@@ -0,0 +1,40 @@
+package com.bin.shortcmd;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A script line split the way the server's command map splits it: the
+ * lower-cased label and the arguments on single spaces.
+ */
+public final class CommandLine {
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private final String label;
+    private final String[] arguments;
+
+    private CommandLine(String label, String[] arguments) {
+        this.label = label;
+        this.arguments = arguments;
+    }
+
+    public static CommandLine parse(String line) {
+        String[] parts = line.split(" ");
+        if (parts.length == 0) {
+            return new CommandLine("", NO_ARGUMENTS);
+        }
+        return new CommandLine(parts[0].toLowerCase(Locale.ENGLISH),
+            parts.length == 1 ? NO_ARGUMENTS : Arrays.copyOfRange(parts, 1, parts.length));
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * The arguments; shared between runs, so callers must not modify them.
+     */
+    public String[] getArguments() {
+        return arguments;
+    }
+}
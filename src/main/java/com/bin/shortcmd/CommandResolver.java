@@ -0,0 +1,136 @@
+package com.bin.shortcmd;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandException;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+/**
+ * Executes script lines through the server's {@link CommandMap} with the
+ * label already resolved, instead of letting {@code Server.dispatchCommand}
+ * split the line and look the command up again for every line. Resolved
+ * labels are cached until a plugin is enabled or disabled, since that is
+ * when commands come and go.
+ * <p>
+ * Labels the command map does not know, and servers that do not expose
+ * their command map, fall back to {@code dispatchCommand}, so the server
+ * still answers unknown commands the usual way. {@code dispatch.pre-resolve}
+ * turns the shortcut off. Must be used from the main thread.
+ */
+public class CommandResolver implements Listener {
+    private final ShortCmdPlugin plugin;
+    private final CommandMap commandMap;
+    private final Map<String, Command> resolved = new HashMap<>();
+    private final Metrics.Counter misses;
+    private boolean enabled;
+
+    public CommandResolver(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.commandMap = findCommandMap(plugin);
+        this.misses = plugin.getMetrics().counter("shortcmd_command_resolve_misses_total",
+            "Command labels looked up in the command map");
+        reload();
+    }
+
+    private static CommandMap findCommandMap(ShortCmdPlugin plugin) {
+        try {
+            Object map = plugin.getServer().getClass().getMethod("getCommandMap").invoke(plugin.getServer());
+            if (map instanceof CommandMap) {
+                return (CommandMap) map;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            plugin.getLogger().log(Level.FINE, "Command map is not available", e);
+        }
+        plugin.getLogger().info("Server does not expose its command map, using dispatchCommand");
+        return null;
+    }
+
+    public void reload() {
+        enabled = commandMap != null && plugin.getConfig().getBoolean("dispatch.pre-resolve", true);
+        resolved.clear();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        resolved.clear();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        resolved.clear();
+    }
+
+    /**
+     * Runs {@code line} as {@code sender}. {@code parsed} is the line already
+     * split at compile time, or {@code null} to split it here.
+     */
+    public boolean dispatch(CommandSender sender, String line, CommandLine parsed) {
+        if (!enabled) {
+            return plugin.getServer().dispatchCommand(sender, line);
+        }
+        CommandLine commandLine = parsed != null ? parsed : CommandLine.parse(line);
+        Command command = resolve(commandLine.getLabel());
+        if (command == null) {
+            return plugin.getServer().dispatchCommand(sender, line);
+        }
+        try {
+            return command.execute(sender, commandLine.getLabel(), commandLine.getArguments().clone());
+        } catch (CommandException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new CommandException("Unhandled exception executing '" + line + "' in " + command, e);
+        }
+    }
+
+    /**
+     * Returns the command registered for {@code label}, or {@code null} if
+     * it is unknown or commands are not resolved.
+     */
+    public Command find(String label) {
+        return enabled ? resolve(label) : null;
+    }
+
+    /**
+     * Returns the labels among {@code labels} that no registered command
+     * answers to, sorted; empty if the command map is not available.
+     */
+    public Set<String> findUnknown(Collection<String> labels) {
+        Set<String> unknown = new TreeSet<>();
+        if (commandMap == null) {
+            return unknown;
+        }
+        for (String label : labels) {
+            if (resolve(label) == null) {
+                unknown.add(label);
+            }
+        }
+        return unknown;
+    }
+
+    private Command resolve(String label) {
+        Command command = resolved.get(label);
+        if (command != null && command.isRegistered()) {
+            return command;
+        }
+        misses.increment();
+        command = commandMap.getCommand(label);
+        if (command != null) {
+            resolved.put(label, command);
+        } else {
+            resolved.remove(label);
+        }
+        return command;
+    }
+}
@@ -0,0 +1,284 @@
+package com.bin.shortcmd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A saved script in its ready-to-run form: trimmed command lines without
+ * blanks and {@code #} comments, the blocklist verdict of every line, each
+ * line split into label and arguments, and the line count, SHA-256 hash and
+ * byte size of the canonical body.
+ * <p>
+ * Large scripts are file-backed: their lines stay on disk and are streamed
+ * while the script runs, with the blocklist checked and the line split as
+ * each line is read. Files ending in {@code .gz} are gunzipped on the way.
+ */
+public final class CompiledScript {
+    private final String[] commands;
+    private final boolean[] blocked;
+    private final CommandLine[] parsed;
+    private final File file;
+    private final int lineCount;
+    private final Blocklist blocklist;
+    private final String hash;
+    private final long bytes;
+
+    private CompiledScript(String[] commands, boolean[] blocked, CommandLine[] parsed, File file, int lineCount,
+                           Blocklist blocklist, String hash, long bytes) {
+        this.commands = commands;
+        this.blocked = blocked;
+        this.parsed = parsed;
+        this.file = file;
+        this.lineCount = lineCount;
+        this.blocklist = blocklist;
+        this.hash = hash;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Compiles raw script lines.
+     */
+    public static CompiledScript compile(Iterable<String> lines, Blocklist blocklist) {
+        List<String> commands = new ArrayList<>();
+        for (String line : lines) {
+            String command = line.trim();
+            if (!command.isEmpty() && command.charAt(0) != '#') {
+                commands.add(command);
+            }
+        }
+        return fromCommands(commands, blocklist);
+    }
+
+    /**
+     * Builds a script from lines that were already compiled once, e.g. loaded
+     * from storage together with their metadata.
+     */
+    public static CompiledScript load(List<String> commands, String hash, long bytes, Blocklist blocklist) {
+        if (hash == null || bytes <= 0) {
+            return fromCommands(commands, blocklist);
+        }
+        String[] array = commands.toArray(new String[0]);
+        return new CompiledScript(array, verdicts(array, blocklist), parse(array), null, array.length, blocklist,
+            hash, bytes);
+    }
+
+    /**
+     * Builds a file-backed script whose compiled lines are stored in {@code file}.
+     */
+    public static CompiledScript ofFile(File file, int lineCount, String hash, long bytes, Blocklist blocklist) {
+        return new CompiledScript(null, null, null, file, lineCount, blocklist, hash, bytes);
+    }
+
+    private static CompiledScript fromCommands(List<String> commands, Blocklist blocklist) {
+        String[] array = commands.toArray(new String[0]);
+        MessageDigest digest = Hashes.sha256();
+        long bytes = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0) {
+                digest.update((byte) '\n');
+                bytes++;
+            }
+            byte[] encoded = array[i].getBytes(StandardCharsets.UTF_8);
+            digest.update(encoded);
+            bytes += encoded.length;
+        }
+        return new CompiledScript(array, verdicts(array, blocklist), parse(array), null, array.length, blocklist,
+            Hashes.hex(digest.digest()), bytes);
+    }
+
+    /**
+     * Returns a copy with the blocklist verdicts recomputed, sharing the command array.
+     */
+    public CompiledScript recompile(Blocklist blocklist) {
+        boolean[] verdicts = commands != null ? verdicts(commands, blocklist) : null;
+        return new CompiledScript(commands, verdicts, parsed, file, lineCount, blocklist, hash, bytes);
+    }
+
+    private static CommandLine[] parse(String[] commands) {
+        CommandLine[] parsed = new CommandLine[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            parsed[i] = CommandLine.parse(commands[i]);
+        }
+        return parsed;
+    }
+
+    private static boolean[] verdicts(String[] commands, Blocklist blocklist) {
+        boolean[] blocked = new boolean[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            blocked[i] = blocklist.isBlocked(commands[i]);
+        }
+        return blocked;
+    }
+
+    public int size() {
+        return lineCount;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public boolean isFileBacked() {
+        return file != null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The compiled lines of an inline script.
+     *
+     * @throws IllegalStateException for file-backed scripts
+     */
+    public List<String> getCommands() {
+        if (commands == null) {
+            throw new IllegalStateException("Script is file-backed");
+        }
+        return Collections.unmodifiableList(Arrays.asList(commands));
+    }
+
+    /**
+     * Opens a cursor over the script lines. File-backed scripts open the file
+     * here, so the cursor must be closed once it is no longer used.
+     */
+    public Cursor cursor() throws IOException {
+        if (commands != null) {
+            return new ArrayCursor();
+        }
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            try {
+                in = new GZIPInputStream(in, 65536);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return new FileCursor(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536));
+    }
+
+    /**
+     * Walks the script lines. {@link #isBlocked()} and {@link #getCommandLine()}
+     * describe the line most recently returned by {@link #next()}.
+     */
+    public interface Cursor extends Iterator<String>, AutoCloseable {
+        boolean isBlocked();
+
+        /**
+         * The line split at compile time, or {@code null} if it was not.
+         */
+        CommandLine getCommandLine();
+
+        @Override
+        void close();
+    }
+
+    private final class ArrayCursor implements Cursor {
+        private int index = -1;
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < commands.length;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return commands[++index];
+        }
+
+        @Override
+        public boolean isBlocked() {
+            return blocked[index];
+        }
+
+        @Override
+        public CommandLine getCommandLine() {
+            return parsed[index];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final class FileCursor implements Cursor {
+        private final BufferedReader reader;
+        private String next;
+        private boolean currentBlocked;
+
+        private FileCursor(BufferedReader reader) {
+            this.reader = reader;
+            advance();
+        }
+
+        private void advance() {
+            try {
+                next = reader.readLine();
+            } catch (IOException e) {
+                next = null;
+                close();
+                throw new UncheckedIOException(e);
+            }
+            if (next == null) {
+                close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            currentBlocked = blocklist.isBlocked(line);
+            advance();
+            return line;
+        }
+
+        @Override
+        public boolean isBlocked() {
+            return currentBlocked;
+        }
+
+        @Override
+        public CommandLine getCommandLine() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.bin.shortcmd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+
+/**
+ * Disk-backed cache of downloaded scripts keyed by URL. Each entry keeps the
+ * parsed lines plus the ETag / Last-Modified validators of the response so
+ * that later fetches can be answered by a conditional GET. Entries are evicted
+ * in least-recently-used order once {@code cache.max-bytes} or
+ * {@code cache.max-entries} is exceeded.
+ */
+public class ContentCache {
+    private final ShortCmdPlugin plugin;
+    private final File directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long ttlMillis;
+    private long maxBytes;
+    private int maxEntries;
+
+    public ContentCache(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "cache");
+        reload();
+        load();
+    }
+
+    public synchronized void reload() {
+        ttlMillis = Math.max(0, plugin.getConfig().getLong("cache.ttl-seconds", 300)) * 1000L;
+        maxBytes = Math.max(0, plugin.getConfig().getLong("cache.max-bytes", 16L * 1024 * 1024));
+        maxEntries = Math.max(0, plugin.getConfig().getInt("cache.max-entries", 256));
+        evict();
+    }
+
+    private void load() {
+        File[] metaFiles = directory.listFiles((dir, name) -> name.endsWith(".meta"));
+        if (metaFiles == null) {
+            return;
+        }
+        // Oldest first, so that insertion order approximates the previous LRU order
+        Arrays.sort(metaFiles, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+        for (File metaFile : metaFiles) {
+            Properties meta = new Properties();
+            try (InputStream in = new FileInputStream(metaFile)) {
+                meta.load(in);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Dropping unreadable cache entry " + metaFile.getName(), e);
+                metaFile.delete();
+                continue;
+            }
+
+            String url = meta.getProperty("url");
+            Entry entry = new Entry(url, Hashes.sha256Hex(url == null ? "" : url));
+            entry.etag = meta.getProperty("etag");
+            entry.lastModified = meta.getProperty("last-modified");
+            entry.fetchedAt = parseLong(meta.getProperty("fetched-at"));
+            entry.size = bodyFile(entry).length();
+
+            if (url == null || !bodyFile(entry).isFile()) {
+                metaFile.delete();
+                continue;
+            }
+            entries.put(url, entry);
+            totalBytes += entry.size;
+        }
+        evict();
+    }
+
+    /**
+     * Returns the cached entry for {@code url}, or {@code null} if there is none.
+     */
+    public synchronized Entry lookup(String url) {
+        return entries.get(url);
+    }
+
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt < ttlMillis;
+    }
+
+    /**
+     * Returns the cached lines of {@code entry}, or {@code null} if a
+     * concurrent {@link #store} evicted it since it was looked up.
+     */
+    public List<String> read(Entry entry) throws IOException {
+        byte[] body;
+        try {
+            body = Files.readAllBytes(bodyFile(entry).toPath());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(body, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Marks an entry as revalidated by the origin (HTTP 304).
+     */
+    public synchronized void revalidated(Entry entry) {
+        if (entries.get(entry.url) != entry) {
+            return;
+        }
+        entry.fetchedAt = System.currentTimeMillis();
+        try {
+            writeMeta(entry);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not update cache entry for " + entry.url, e);
+        }
+    }
+
+    public synchronized void store(String url, String etag, String lastModified, List<String> lines) {
+        if (maxEntries == 0 || maxBytes == 0) {
+            return;
+        }
+        byte[] body = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        if (body.length > maxBytes) {
+            remove(url);
+            return;
+        }
+
+        Entry entry = new Entry(url, Hashes.sha256Hex(url));
+        entry.etag = etag;
+        entry.lastModified = lastModified;
+        entry.fetchedAt = System.currentTimeMillis();
+        entry.size = body.length;
+
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create cache directory");
+            }
+            File tmp = new File(directory, entry.key + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                out.write(body);
+            }
+            Files.move(tmp.toPath(), bodyFile(entry).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            writeMeta(entry);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not cache " + url, e);
+            return;
+        }
+
+        Entry previous = entries.put(url, entry);
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+        totalBytes += entry.size;
+        evict();
+    }
+
+    private void remove(String url) {
+        Entry entry = entries.remove(url);
+        if (entry != null) {
+            totalBytes -= entry.size;
+            delete(entry);
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && (totalBytes > maxBytes || entries.size() > maxEntries)) {
+            Entry eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.size;
+            delete(eldest);
+        }
+    }
+
+    private void delete(Entry entry) {
+        bodyFile(entry).delete();
+        new File(directory, entry.key + ".meta").delete();
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("url", entry.url);
+        if (entry.etag != null) {
+            meta.setProperty("etag", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            meta.setProperty("last-modified", entry.lastModified);
+        }
+        meta.setProperty("fetched-at", String.valueOf(entry.fetchedAt));
+        try (OutputStream out = new FileOutputStream(new File(directory, entry.key + ".meta"))) {
+            meta.store(out, null);
+        }
+    }
+
+    private File bodyFile(Entry entry) {
+        return new File(directory, entry.key + ".body");
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? 0L : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    public static class Entry {
+        private final String url;
+        private final String key;
+        private String etag;
+        private String lastModified;
+        private long fetchedAt;
+        private long size;
+
+        Entry(String url, String key) {
+            this.url = url;
+            this.key = key;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+}
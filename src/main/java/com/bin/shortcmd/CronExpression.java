@@ -0,0 +1,131 @@
+package com.bin.shortcmd;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * A standard five-field cron expression ({@code minute hour day-of-month
+ * month day-of-week}) evaluated in the server's time zone. Fields accept
+ * {@code *}, numbers, ranges {@code a-b}, lists {@code a,b} and steps
+ * {@code *}{@code /n} or {@code a-b/n}; day-of-week 0 and 7 are Sunday. As in
+ * cron, when both day fields are restricted a day matches either of them.
+ */
+final class CronExpression {
+    private static final int MAX_STEPS = 100_000;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet days;
+    private final BitSet months;
+    private final BitSet weekdays;
+    private final boolean anyDay;
+    private final boolean anyWeekday;
+
+    private CronExpression(String expression, String[] fields) {
+        this.expression = expression;
+        this.minutes = parseField(fields[0], 0, 59, "minute");
+        this.hours = parseField(fields[1], 0, 23, "hour");
+        this.days = parseField(fields[2], 1, 31, "day of month");
+        this.months = parseField(fields[3], 1, 12, "month");
+        BitSet weekdays = parseField(fields[4], 0, 7, "day of week");
+        if (weekdays.get(7)) {
+            weekdays.set(0);
+        }
+        this.weekdays = weekdays;
+        this.anyDay = fields[2].equals("*");
+        this.anyWeekday = fields[4].equals("*");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is malformed or never matches
+     */
+    static CronExpression parse(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression needs 5 fields: " + expression);
+        }
+        CronExpression cron = new CronExpression(String.join(" ", fields), fields);
+        if (cron.nextAfter(System.currentTimeMillis()) == Long.MAX_VALUE) {
+            throw new IllegalArgumentException("Cron expression never matches: " + expression);
+        }
+        return cron;
+    }
+
+    private static BitSet parseField(String field, int min, int max, String name) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            String range = part;
+            try {
+                if (slash >= 0) {
+                    step = Integer.parseInt(part.substring(slash + 1));
+                    range = part.substring(0, slash);
+                }
+                int from;
+                int to;
+                if (range.equals("*")) {
+                    from = min;
+                    to = max;
+                } else if (range.indexOf('-') > 0) {
+                    from = Integer.parseInt(range.substring(0, range.indexOf('-')));
+                    to = Integer.parseInt(range.substring(range.indexOf('-') + 1));
+                } else {
+                    from = Integer.parseInt(range);
+                    to = slash >= 0 ? max : from;
+                }
+                if (step < 1 || from < min || to > max || from > to) {
+                    throw new IllegalArgumentException("Invalid " + name + " field: " + field);
+                }
+                for (int value = from; value <= to; value += step) {
+                    values.set(value);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + name + " field: " + field);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The first matching minute strictly after {@code millis}, or
+     * {@link Long#MAX_VALUE} if there is none within reach.
+     */
+    long nextAfter(long millis) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone)
+            .truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        for (int i = 0; i < MAX_STEPS; i++) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time.atZone(zone).toInstant().toEpochMilli();
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private boolean dayMatches(LocalDateTime time) {
+        boolean day = days.get(time.getDayOfMonth());
+        boolean weekday = weekdays.get(time.getDayOfWeek().getValue() % 7);
+        if (anyDay || anyWeekday) {
+            return day && weekday;
+        }
+        return day || weekday;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,90 @@
+package com.bin.shortcmd;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+/**
+ * One source of a multi-source fetch: its link and the download in flight.
+ * The download is cut off once {@code fetch.source-timeout-ms} has passed,
+ * even if the worker is still blocked on the connection.
+ */
+public final class FetchedSource<T> {
+    private final String link;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private volatile Future<?> task;
+
+    FetchedSource(String link) {
+        this.link = link;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    /**
+     * The downloaded value, or {@code null} while pending or after a failure.
+     */
+    public T getResult() {
+        return result.isDone() && !result.isCompletedExceptionally() ? result.join() : null;
+    }
+
+    /**
+     * Why the source failed, or {@code null} if it is pending or succeeded.
+     */
+    public Throwable getError() {
+        if (!result.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (CancellationException e) {
+            return e;
+        }
+        return null;
+    }
+
+    CompletableFuture<T> future() {
+        return result;
+    }
+
+    void setTask(Future<?> task) {
+        this.task = task;
+        if (result.isDone()) {
+            task.cancel(false);
+        }
+    }
+
+    boolean complete(T value) {
+        return result.complete(value);
+    }
+
+    void fail(Throwable error) {
+        result.completeExceptionally(error);
+    }
+
+    void expire() {
+        abort(new SocketTimeoutException("Source timed out"));
+    }
+
+    void cancel() {
+        abort(new CancellationException("Source cancelled"));
+    }
+
+    private void abort(Throwable error) {
+        if (result.completeExceptionally(error)) {
+            Future<?> running = task;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.bin.shortcmd;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * A script shipped with the server as a file inside the plugin folder,
+ * written as {@code file:<path>} relative to that folder. It is read
+ * directly, without the network, the cache or host health tracking.
+ */
+public class FileScriptSource implements ScriptSource {
+    private final String path;
+    private final File file;
+
+    private FileScriptSource(String path, File file) {
+        this.path = path;
+        this.file = file;
+    }
+
+    /**
+     * Resolves {@code path} against {@code root}; paths leading outside of
+     * {@code root} are rejected.
+     */
+    public static FileScriptSource resolve(File root, String path) throws IOException {
+        File base = root.getCanonicalFile();
+        File file = new File(base, path).getCanonicalFile();
+        if (!file.getPath().startsWith(base.getPath() + File.separator)) {
+            throw new IllegalArgumentException("File source outside of the plugin folder: " + path);
+        }
+        return new FileScriptSource(path, file);
+    }
+
+    @Override
+    public String getLink() {
+        return "file:" + path;
+    }
+
+    @Override
+    public String getHost() {
+        return null;
+    }
+
+    @Override
+    public Response open(ContentCache.Entry cached, int connectTimeout, int readTimeout) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException("File not found: " + getLink());
+        }
+        return new Response(200, new BufferedInputStream(new FileInputStream(file), 65536), null,
+            String.valueOf(file.lastModified()));
+    }
+}
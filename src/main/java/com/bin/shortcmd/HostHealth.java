@@ -0,0 +1,149 @@
+package com.bin.shortcmd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tracks the health of every script origin and acts as a per-host circuit
+ * breaker. After {@code health.failure-threshold} consecutive failures the
+ * circuit opens and requests to that host fail immediately. Once
+ * {@code health.open-seconds} have passed a single half-open probe is let
+ * through; its outcome closes or re-opens the circuit.
+ */
+public class HostHealth {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final ShortCmdPlugin plugin;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private volatile int failureThreshold;
+    private volatile long openMillis;
+    private volatile long windowMillis;
+
+    public HostHealth(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        reload();
+    }
+
+    public void reload() {
+        failureThreshold = Math.max(1, plugin.getConfig().getInt("health.failure-threshold", 3));
+        openMillis = Math.max(0, plugin.getConfig().getLong("health.open-seconds", 30)) * 1000L;
+        windowMillis = Math.max(0, plugin.getConfig().getLong("health.window-seconds", 60)) * 1000L;
+    }
+
+    /**
+     * Returns {@code true} if a request to {@code host} may be attempted now.
+     * Callers that receive {@code true} must report the outcome through
+     * {@link #recordSuccess} or {@link #recordFailure}.
+     */
+    public boolean allowRequest(String host) {
+        Host state = host(host);
+        synchronized (state) {
+            switch (state.state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.currentTimeMillis() - state.openedAt < openMillis) {
+                        return false;
+                    }
+                    state.state = State.HALF_OPEN;
+                    return true;
+                case HALF_OPEN:
+                default:
+                    // A probe is already in flight
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Milliseconds until the circuit for {@code host} allows a probe again.
+     */
+    public long retryAfter(String host) {
+        Host state = host(host);
+        synchronized (state) {
+            if (state.state == State.CLOSED) {
+                return 0L;
+            }
+            return Math.max(0L, openMillis - (System.currentTimeMillis() - state.openedAt));
+        }
+    }
+
+    public void recordSuccess(String host) {
+        Host state = host(host);
+        synchronized (state) {
+            state.state = State.CLOSED;
+            state.consecutiveFailures = 0;
+            state.lastSuccess = System.currentTimeMillis();
+        }
+    }
+
+    public void recordFailure(String host) {
+        Host state = host(host);
+        synchronized (state) {
+            long now = System.currentTimeMillis();
+            if (now - state.lastFailure > windowMillis) {
+                // The previous failure streak is too old to count
+                state.consecutiveFailures = 0;
+            }
+            state.consecutiveFailures++;
+            state.lastFailure = now;
+
+            if (state.state == State.HALF_OPEN || state.consecutiveFailures >= failureThreshold) {
+                state.state = State.OPEN;
+                state.openedAt = now;
+            }
+        }
+    }
+
+    public List<Snapshot> snapshot() {
+        List<Snapshot> result = new ArrayList<>();
+        for (Host state : hosts.values()) {
+            synchronized (state) {
+                result.add(new Snapshot(state.name, state.state, state.consecutiveFailures,
+                    state.lastSuccess, state.lastFailure));
+            }
+        }
+        result.sort((a, b) -> a.host.compareTo(b.host));
+        return result;
+    }
+
+    private Host host(String host) {
+        return hosts.computeIfAbsent(host.toLowerCase(Locale.ROOT), Host::new);
+    }
+
+    private static final class Host {
+        private final String name;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private long lastSuccess;
+        private long lastFailure;
+
+        private Host(String name) {
+            this.name = name;
+        }
+    }
+
+    public static final class Snapshot {
+        public final String host;
+        public final State state;
+        public final int consecutiveFailures;
+        public final long lastSuccess;
+        public final long lastFailure;
+
+        private Snapshot(String host, State state, int consecutiveFailures, long lastSuccess, long lastFailure) {
+            this.host = host;
+            this.state = state;
+            this.consecutiveFailures = consecutiveFailures;
+            this.lastSuccess = lastSuccess;
+            this.lastFailure = lastFailure;
+        }
+    }
+}
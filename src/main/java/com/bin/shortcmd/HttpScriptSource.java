@@ -0,0 +1,116 @@
+package com.bin.shortcmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A script served over HTTP(S). Requests ask for gzip and decode it while
+ * streaming. Connections are never torn down explicitly: closing a response
+ * drains what is left of a small body so the JDK can keep the socket alive
+ * and reuse it for the next request to the same host.
+ * <p>
+ * Connect, time-to-first-byte and body times are recorded per host.
+ */
+public class HttpScriptSource implements ScriptSource {
+    private static final int DRAIN_LIMIT = 64 * 1024;
+
+    private final URL url;
+    private final String userAgent;
+    private final Metrics metrics;
+
+    public HttpScriptSource(URL url, String userAgent, Metrics metrics) {
+        this.url = url;
+        this.userAgent = userAgent;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getLink() {
+        return url.toString();
+    }
+
+    @Override
+    public String getHost() {
+        return url.getHost();
+    }
+
+    @Override
+    public Response open(ContentCache.Entry cached, int connectTimeout, int readTimeout) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("User-Agent", userAgent);
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                conn.setRequestProperty("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                conn.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            }
+        }
+
+        String host = getHost();
+        long start = System.nanoTime();
+        conn.connect();
+        long connected = System.nanoTime();
+        int status = conn.getResponseCode();
+        long firstByte = System.nanoTime();
+        metrics.histogram("shortcmd_http_connect_seconds", "Time to open a connection", "host", host)
+            .record(connected - start);
+        metrics.histogram("shortcmd_http_ttfb_seconds", "Time from request to response headers", "host", host)
+            .record(firstByte - connected);
+
+        InputStream raw = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        if (raw == null) {
+            raw = new ByteArrayInputStream(new byte[0]);
+        }
+        InputStream body = new DrainOnClose(raw, firstByte,
+            metrics.histogram("shortcmd_http_body_seconds", "Time from response headers to closed body", "host", host));
+        if (status == HttpURLConnection.HTTP_OK && "gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+            body = new GZIPInputStream(body, 8192);
+        }
+        return new Response(status, body, conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+    }
+
+    /**
+     * Reads a bounded rest of the body on close so the connection can be reused.
+     */
+    private static final class DrainOnClose extends FilterInputStream {
+        private final long opened;
+        private final Metrics.Histogram bodyTime;
+        private boolean closed;
+
+        private DrainOnClose(InputStream in, long opened, Metrics.Histogram bodyTime) {
+            super(in);
+            this.opened = opened;
+            this.bodyTime = bodyTime;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] buffer = new byte[8192];
+                int drained = 0;
+                int n;
+                while (drained < DRAIN_LIMIT && (n = in.read(buffer)) > 0) {
+                    drained += n;
+                }
+            } catch (IOException ignored) {
+                // The connection just won't be reused
+            } finally {
+                in.close();
+                bodyTime.record(System.nanoTime() - opened);
+            }
+        }
+    }
+}
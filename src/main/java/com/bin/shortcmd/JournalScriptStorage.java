@@ -0,0 +1,842 @@
+package com.bin.shortcmd;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ScriptStorage} backed by an append-only journal and a snapshot.
+ * <p>
+ * Every mutation updates the in-memory maps immediately and is encoded into a
+ * journal record that a background writer thread appends in batches. The
+ * journal is folded into a new snapshot every {@code storage.compact-minutes}
+ * minutes, once it grows past {@code storage.compact-journal-bytes}, and on
+ * close. Startup loads the snapshot and replays the journal on top of it;
+ * a torn record at the journal tail is truncated away.
+ * <p>
+ * Each snapshot moves the bodies of inline scripts into a new
+ * {@link ScriptPack} and records only their offset, length and hash, so
+ * loading a snapshot does not read any script body and the heap holds just
+ * that index. Bodies are decoded from the memory-mapped pack when a script
+ * is first run. The snapshot names its pack, so a crash between writing the
+ * two leaves the previous pair intact.
+ * <p>
+ * Bodies are content-addressed by their SHA-256 hash: saving a script that is
+ * already stored under another name journals only a reference, and the pack
+ * holds each body once, deflated from {@code storage.compress-min-bytes} on.
+ * A body stays stored after the last name referring to it is deleted, so it
+ * is shared again if the same script is saved later, until
+ * {@link #collectGarbage()} drops it.
+ */
+public class JournalScriptStorage implements ScriptStorage {
+    private static final int MAGIC = 0x53434D44;
+    private static final int VERSION = 3;
+    private static final String PACK_PREFIX = "scripts-";
+    private static final String PACK_SUFFIX = ".pack";
+    private static final int MAX_RECORD_BYTES = 1 << 28;
+
+    private static final byte PUT_LINK = 1;
+    private static final byte REMOVE_LINK = 2;
+    private static final byte PUT_SCRIPT = 3;
+    private static final byte REMOVE_SCRIPT = 4;
+    private static final byte PUT_SCRIPT_FILE = 5;
+    private static final byte PUT_SCHEDULE = 6;
+    private static final byte REMOVE_SCHEDULE = 7;
+    private static final byte PUT_SCRIPT_PACKED = 8;
+    private static final byte PUT_BODY = 9;
+    private static final byte PUT_SCRIPT_REF = 10;
+
+    private static final byte[] COMPACT = new byte[0];
+    private static final byte[] SHUTDOWN = new byte[0];
+
+    private final ShortCmdPlugin plugin;
+    private final File directory;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Map<String, String> links = new ConcurrentHashMap<>();
+    private final Map<String, StoredScript> scripts = new ConcurrentHashMap<>();
+    private final Map<String, ScriptSchedule> schedules = new ConcurrentHashMap<>();
+    private final Map<String, Body> bodies = new ConcurrentHashMap<>();
+    private final NameIndex names = new NameIndex();
+    private final BlockingQueue<byte[]> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final long compactIntervalMillis;
+    private final long compactJournalBytes;
+    private final boolean fsync;
+    private final long compressMinBytes;
+    private final Metrics.Counter deduplicated;
+
+    private FileOutputStream journalOut;
+    private BufferedOutputStream journalBuffer;
+    private long journalBytes;
+    private long lastCompaction;
+    private volatile ScriptPack pack;
+    private volatile boolean closed;
+
+    public JournalScriptStorage(ShortCmdPlugin plugin, File directory) throws IOException {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.snapshotFile = new File(directory, "snapshot.dat");
+        this.journalFile = new File(directory, "journal.dat");
+        this.compactIntervalMillis = Math.max(1, plugin.getConfig().getLong("storage.compact-minutes", 10)) * 60_000L;
+        this.compactJournalBytes = Math.max(1024, plugin.getConfig().getLong("storage.compact-journal-bytes", 4194304));
+        this.fsync = plugin.getConfig().getBoolean("storage.fsync", false);
+        this.compressMinBytes = Math.max(0, plugin.getConfig().getLong("storage.compress-min-bytes", 4096));
+        this.deduplicated = plugin.getMetrics().counter("shortcmd_scripts_deduplicated_total",
+            "Saved scripts whose body was already stored");
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create storage directory");
+        }
+
+        // An empty journal without a snapshot is also left by a first start that stopped mid-import
+        boolean fresh = !snapshotFile.exists() && journalFile.length() == 0;
+        if (snapshotFile.exists()) {
+            readSnapshot();
+        }
+        if (journalFile.exists()) {
+            replayJournal();
+        }
+        File legacyFile = new File(plugin.getDataFolder(), "storage.yml");
+        boolean imported = fresh && importLegacy(legacyFile);
+        deleteStalePacks();
+
+        openJournal(true);
+        lastCompaction = System.currentTimeMillis();
+        if (imported) {
+            // The snapshot holds everything the import queued; storage.yml is only set aside once it is written
+            pending.clear();
+            writeSnapshot();
+            File kept = new File(legacyFile.getPath() + ".imported");
+            if (legacyFile.renameTo(kept)) {
+                plugin.getLogger().info("Imported " + links.size() + " links and " + scripts.size()
+                    + " scripts from storage.yml (kept as " + kept.getName() + ")");
+            }
+        }
+
+        writer = new Thread(this::writeLoop, "ShortCmd-Storage");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public String getLink(String name) {
+        return links.get(name);
+    }
+
+    @Override
+    public void putLink(String name, String link) {
+        if (links.put(name, link) == null) {
+            names.add(name);
+        }
+        append(encode(PUT_LINK, name, link, null));
+    }
+
+    @Override
+    public boolean removeLink(String name) {
+        if (links.remove(name) == null) {
+            return false;
+        }
+        names.remove(name);
+        append(encode(REMOVE_LINK, name, null, null));
+        return true;
+    }
+
+    @Override
+    public Set<String> getLinkNames() {
+        return Collections.unmodifiableSet(links.keySet());
+    }
+
+    @Override
+    public StoredScript getScript(String name) {
+        return scripts.get(name);
+    }
+
+    @Override
+    public void putScript(String name, StoredScript script) {
+        StoredScript body = script.isFileBacked() ? script : intern(script);
+        store(name, body);
+        if (body != script) {
+            deduplicated.increment();
+            append(encode(PUT_SCRIPT_REF, name, script.getHash(), null));
+        } else {
+            append(encode(name, script));
+        }
+    }
+
+    @Override
+    public boolean removeScript(String name) {
+        StoredScript previous = scripts.remove(name);
+        if (previous == null) {
+            return false;
+        }
+        names.remove(name);
+        release(previous);
+        append(encode(REMOVE_SCRIPT, name, null, null));
+        return true;
+    }
+
+    /**
+     * Returns the stored instance of an inline script's body, registering
+     * {@code script} as that body if its hash is new.
+     */
+    private StoredScript intern(StoredScript script) {
+        Body body = bodies.get(script.getHash());
+        if (body != null) {
+            return body.script;
+        }
+        bodies.put(script.getHash(), new Body(script));
+        return script;
+    }
+
+    private void store(String name, StoredScript script) {
+        retain(script);
+        StoredScript previous = scripts.put(name, script);
+        if (previous == null) {
+            names.add(name);
+        } else {
+            release(previous);
+        }
+    }
+
+    private void retain(StoredScript script) {
+        Body body = script.isFileBacked() ? null : bodies.get(script.getHash());
+        if (body != null) {
+            body.refs++;
+        }
+    }
+
+    private void release(StoredScript script) {
+        Body body = script.isFileBacked() ? null : bodies.get(script.getHash());
+        if (body != null) {
+            body.refs--;
+        }
+    }
+
+    @Override
+    public Set<String> getScriptNames() {
+        return Collections.unmodifiableSet(scripts.keySet());
+    }
+
+    @Override
+    public ScriptSchedule getSchedule(String name) {
+        return schedules.get(name);
+    }
+
+    @Override
+    public void putSchedule(String name, ScriptSchedule schedule) {
+        schedules.put(name, schedule);
+        append(encode(name, schedule));
+    }
+
+    @Override
+    public boolean removeSchedule(String name) {
+        if (schedules.remove(name) == null) {
+            return false;
+        }
+        append(encode(REMOVE_SCHEDULE, name, null, null));
+        return true;
+    }
+
+    @Override
+    public Set<String> getScheduleNames() {
+        return Collections.unmodifiableSet(schedules.keySet());
+    }
+
+    @Override
+    public List<String> completeNames(String prefix, int limit) {
+        return names.complete(prefix, limit);
+    }
+
+    @Override
+    public void compact() {
+        append(COMPACT);
+    }
+
+    @Override
+    public Reclaimed collectGarbage() {
+        int count = 0;
+        long bytes = 0;
+        for (Iterator<Body> it = bodies.values().iterator(); it.hasNext(); ) {
+            Body body = it.next();
+            if (body.refs <= 0) {
+                it.remove();
+                count++;
+                bytes += body.script.isPacked() ? body.script.getPackedLength() : body.script.getBytes();
+            }
+        }
+        if (count > 0) {
+            compact();
+        }
+        return new Reclaimed(count, bytes);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.add(SHUTDOWN);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(byte[] record) {
+        if (closed) {
+            plugin.getLogger().warning("Storage is closed, mutation not persisted");
+            return;
+        }
+        pending.add(record);
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                byte[] first = pending.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                }
+
+                boolean compact = false;
+                for (byte[] record : batch) {
+                    if (record == SHUTDOWN) {
+                        running = false;
+                        compact = true;
+                    } else if (record == COMPACT) {
+                        compact = true;
+                    } else {
+                        writeFrame(journalBuffer, record);
+                        journalBytes += record.length + 8;
+                    }
+                }
+                batch.clear();
+                journalBuffer.flush();
+                if (fsync) {
+                    journalOut.getFD().sync();
+                }
+
+                if (compact || journalBytes > compactJournalBytes
+                    || (journalBytes > 0 && System.currentTimeMillis() - lastCompaction > compactIntervalMillis)) {
+                    writeSnapshot();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not write storage journal", e);
+                batch.clear();
+            }
+        }
+        try {
+            journalBuffer.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not close storage journal", e);
+        }
+    }
+
+    /**
+     * Writes the stored bodies to a new pack and the current maps to a new
+     * snapshot referring to it, then starts an empty journal. Records
+     * still queued after this point are replayed on top of the snapshot at
+     * startup, which is safe because every operation is an idempotent put or
+     * remove.
+     */
+    private void writeSnapshot() throws IOException {
+        long generation = System.currentTimeMillis();
+        File packFile;
+        while ((packFile = new File(directory, PACK_PREFIX + generation + PACK_SUFFIX)).exists()) {
+            generation++;
+        }
+        Map<String, Packed> packed = new HashMap<>();
+        boolean success = false;
+        try {
+            try (FileOutputStream fileOut = new FileOutputStream(packFile);
+                 BufferedOutputStream out = new BufferedOutputStream(fileOut, 65536)) {
+                long offset = 0;
+                for (Map.Entry<String, Body> entry : bodies.entrySet()) {
+                    StoredScript script = entry.getValue().script;
+                    if (offset + script.getBytes() > ScriptPack.MAX_BYTES) {
+                        continue;
+                    }
+                    boolean compress = compressMinBytes > 0 && script.getBytes() >= compressMinBytes;
+                    long length = script.writeBody(out, compress);
+                    packed.put(entry.getKey(), new Packed(entry.getKey(), script, offset, length, compress));
+                    offset += length;
+                }
+                if (offset > ScriptPack.MAX_BYTES) {
+                    throw new IOException("Script pack would be larger than 2 GB");
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+
+            File tmp = new File(snapshotFile.getPath() + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, packFile.getName());
+                for (Map.Entry<String, String> entry : links.entrySet()) {
+                    writeFrame(out, encode(PUT_LINK, entry.getKey(), entry.getValue(), null));
+                }
+                for (Packed body : packed.values()) {
+                    writeFrame(out, encode(body));
+                }
+                for (Map.Entry<String, StoredScript> entry : scripts.entrySet()) {
+                    StoredScript script = entry.getValue();
+                    if (!script.isFileBacked() && packed.containsKey(script.getHash())) {
+                        writeFrame(out, encode(PUT_SCRIPT_REF, entry.getKey(), script.getHash(), null));
+                    } else {
+                        writeFrame(out, encode(entry.getKey(), script));
+                    }
+                }
+                for (Map.Entry<String, ScriptSchedule> entry : schedules.entrySet()) {
+                    writeFrame(out, encode(entry.getKey(), entry.getValue()));
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            try {
+                Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                packFile.delete();
+            }
+        }
+
+        journalBuffer.close();
+        openJournal(false);
+        lastCompaction = System.currentTimeMillis();
+        swapPack(packFile, packed.values());
+    }
+
+    /**
+     * Points the stored bodies at the pack just written, dropping their heap
+     * copies, unless they were replaced or collected in the meantime.
+     */
+    private void swapPack(File packFile, Collection<Packed> packed) {
+        ScriptPack next;
+        try {
+            next = ScriptPack.open(packFile);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not map " + packFile.getName()
+                + ", keeping script bodies in memory until restart", e);
+            return;
+        }
+        Map<StoredScript, StoredScript> swapped = new IdentityHashMap<>();
+        for (Packed body : packed) {
+            StoredScript script = body.script;
+            Body stored = bodies.get(body.hash);
+            if (stored == null || stored.script != script) {
+                continue;
+            }
+            stored.script = StoredScript.ofPack(next, body.offset, body.length, body.compressed,
+                script.getLineCount(), script.getHash(), script.getBytes());
+            swapped.put(script, stored.script);
+        }
+        scripts.replaceAll((name, script) -> swapped.getOrDefault(script, script));
+        ScriptPack previous = pack;
+        pack = next;
+        if (previous != null) {
+            // Only unreferenced once the old entries are gone; startup removes it if this fails
+            new File(directory, previous.getName()).delete();
+        }
+    }
+
+    /**
+     * Removes packs left behind by a crash or by a platform that refused to
+     * delete a still-mapped file.
+     */
+    private void deleteStalePacks() {
+        String current = pack != null ? pack.getName() : null;
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PACK_PREFIX) && name.endsWith(PACK_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().equals(current)) {
+                file.delete();
+            }
+        }
+    }
+
+    private void openJournal(boolean append) throws IOException {
+        journalOut = new FileOutputStream(journalFile, append);
+        journalBuffer = new BufferedOutputStream(journalOut);
+        journalBytes = append ? journalFile.length() : 0L;
+    }
+
+    private void readSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown storage snapshot format: " + snapshotFile);
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unknown storage snapshot version " + version + ": " + snapshotFile);
+            }
+            if (version >= 2) {
+                pack = ScriptPack.open(new File(directory, readString(in)));
+            }
+            while (true) {
+                byte[] record = readFrame(in);
+                if (record == null) {
+                    break;
+                }
+                apply(record);
+            }
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        long valid = 0;
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                byte[] record;
+                try {
+                    record = readFrame(in);
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Storage journal is damaged after " + replayed
+                        + " records, discarding the tail: " + e.getMessage());
+                    break;
+                }
+                if (record == null) {
+                    break;
+                }
+                apply(record);
+                valid += record.length + 8;
+                replayed++;
+            }
+        }
+        if (valid < journalFile.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(valid);
+            }
+        }
+    }
+
+    /**
+     * Loads the links and scripts of {@code storage.yml} into the maps.
+     * Returns {@code false} if there is no such file.
+     */
+    private boolean importLegacy(File legacyFile) {
+        if (!legacyFile.isFile()) {
+            return false;
+        }
+        FileConfiguration legacy = YamlConfiguration.loadConfiguration(legacyFile);
+
+        ConfigurationSection commands = legacy.getConfigurationSection("commands");
+        if (commands != null) {
+            for (String name : commands.getKeys(false)) {
+                String link = commands.getString(name);
+                if (link != null) {
+                    putLink(name, link);
+                }
+            }
+        }
+
+        ConfigurationSection saved = legacy.getConfigurationSection("saved_commands");
+        if (saved != null) {
+            for (String name : saved.getKeys(false)) {
+                CompiledScript script;
+                if (saved.isConfigurationSection(name)) {
+                    ConfigurationSection section = saved.getConfigurationSection(name);
+                    script = CompiledScript.load(section.getStringList("lines"), section.getString("hash"),
+                        section.getLong("bytes"), plugin.getBlocklist());
+                } else if (saved.isString(name)) {
+                    script = CompiledScript.compile(Arrays.asList(saved.getString(name).split("\n")),
+                        plugin.getBlocklist());
+                } else {
+                    continue;
+                }
+                putScript(name, new StoredScript(script.getCommands(), script.getHash(), script.getBytes()));
+            }
+        }
+        return true;
+    }
+
+    private void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte op = in.readByte();
+        String name = readString(in);
+        switch (op) {
+            case PUT_LINK:
+                if (links.put(name, readString(in)) == null) {
+                    names.add(name);
+                }
+                break;
+            case REMOVE_LINK:
+                if (links.remove(name) != null) {
+                    names.remove(name);
+                }
+                break;
+            case PUT_SCRIPT:
+                String hash = readString(in);
+                long bytes = in.readLong();
+                int count = in.readInt();
+                List<String> lines = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    lines.add(readString(in));
+                }
+                store(name, intern(new StoredScript(lines, hash, bytes)));
+                break;
+            case PUT_SCRIPT_FILE:
+                String fileHash = readString(in);
+                long fileBytes = in.readLong();
+                int lineCount = in.readInt();
+                store(name, StoredScript.ofFile(readString(in), lineCount, fileHash, fileBytes));
+                break;
+            case PUT_SCRIPT_PACKED:
+                // Written by version 2 snapshots, one body per name
+                if (pack == null) {
+                    throw new IOException("Packed script " + name + " without a script pack");
+                }
+                String packedHash = readString(in);
+                long packedBytes = in.readLong();
+                int packedLines = in.readInt();
+                long offset = in.readLong();
+                long length = in.readLong();
+                store(name, intern(StoredScript.ofPack(pack, offset, length, false, packedLines, packedHash,
+                    packedBytes)));
+                break;
+            case PUT_BODY:
+                if (pack == null) {
+                    throw new IOException("Script body " + name + " without a script pack");
+                }
+                long bodyBytes = in.readLong();
+                int bodyLines = in.readInt();
+                long bodyOffset = in.readLong();
+                long bodyLength = in.readLong();
+                boolean compressed = in.readBoolean();
+                bodies.putIfAbsent(name, new Body(StoredScript.ofPack(pack, bodyOffset, bodyLength, compressed,
+                    bodyLines, name, bodyBytes)));
+                break;
+            case PUT_SCRIPT_REF:
+                String refHash = readString(in);
+                Body body = bodies.get(refHash);
+                if (body == null) {
+                    // The body was collected after this record was queued; a later record replaces the name
+                    plugin.getLogger().warning("Dropping script " + name + ", its body " + refHash + " is missing");
+                    break;
+                }
+                store(name, body.script);
+                break;
+            case REMOVE_SCRIPT:
+                StoredScript removed = scripts.remove(name);
+                if (removed != null) {
+                    names.remove(name);
+                    release(removed);
+                }
+                break;
+            case PUT_SCHEDULE:
+                String spec = readString(in);
+                String missed = readString(in);
+                String overlap = readString(in);
+                long lastRun = in.readLong();
+                try {
+                    schedules.put(name, ScriptSchedule.parse(spec, ScriptSchedule.Missed.of(missed),
+                        ScriptSchedule.Overlap.of(overlap), lastRun));
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().warning("Dropping invalid schedule of " + name + ": " + e.getMessage());
+                }
+                break;
+            case REMOVE_SCHEDULE:
+                schedules.remove(name);
+                break;
+            default:
+                throw new IOException("Unknown storage record type " + op);
+        }
+    }
+
+    private static byte[] encode(String name, StoredScript script) {
+        return encode(script.isFileBacked() ? PUT_SCRIPT_FILE : PUT_SCRIPT, name, null, script);
+    }
+
+    private static byte[] encode(Packed body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PUT_BODY);
+            writeString(out, body.hash);
+            out.writeLong(body.script.getBytes());
+            out.writeInt(body.script.getLineCount());
+            out.writeLong(body.offset);
+            out.writeLong(body.length);
+            out.writeBoolean(body.compressed);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(String name, ScriptSchedule schedule) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PUT_SCHEDULE);
+            writeString(out, name);
+            writeString(out, schedule.getSpec());
+            writeString(out, schedule.getMissed().name());
+            writeString(out, schedule.getOverlap().name());
+            out.writeLong(schedule.getLastRun());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(byte op, String name, String link, StoredScript script) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            writeString(out, name);
+            if (link != null) {
+                writeString(out, link);
+            }
+            if (script != null) {
+                writeString(out, script.getHash());
+                out.writeLong(script.getBytes());
+                out.writeInt(script.getLineCount());
+                if (script.isFileBacked()) {
+                    writeString(out, script.getFile());
+                } else {
+                    for (String line : script.getLines()) {
+                        writeString(out, line);
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeFrame(OutputStream out, byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(record.length);
+        data.writeInt((int) crc.getValue());
+        data.write(record);
+    }
+
+    /**
+     * Returns the next record, {@code null} at a clean end of stream, or throws
+     * if the frame is truncated or its checksum does not match.
+     */
+    private static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("Invalid record length " + length);
+        }
+        int expected = in.readInt();
+        byte[] record = new byte[length];
+        in.readFully(record);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("Checksum mismatch");
+        }
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A stored script body and the number of names referring to it. The
+     * count is only changed on the main thread, or during startup.
+     */
+    private static final class Body {
+        private volatile StoredScript script;
+        private int refs;
+
+        private Body(StoredScript script) {
+            this.script = script;
+        }
+    }
+
+    /**
+     * A script body written to the next pack during a snapshot.
+     */
+    private static final class Packed {
+        private final String hash;
+        private final StoredScript script;
+        private final long offset;
+        private final long length;
+        private final boolean compressed;
+
+        private Packed(String hash, StoredScript script, long offset, long length, boolean compressed) {
+            this.hash = hash;
+            this.script = script;
+            this.offset = offset;
+            this.length = length;
+            this.compressed = compressed;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.bin.shortcmd;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with {@link ScriptIngest.InvalidScriptException} once more than
+ * {@code limit} bytes have been read.
+ */
+final class LimitedInputStream extends FilterInputStream {
+    private final long limit;
+    private long read;
+
+    LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    private void count(long n) throws IOException {
+        read += n;
+        if (read > limit) {
+            throw new ScriptIngest.InvalidScriptException("Script is larger than " + limit + " bytes");
+        }
+    }
+}
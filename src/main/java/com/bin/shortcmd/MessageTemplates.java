@@ -0,0 +1,190 @@
+package com.bin.shortcmd;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Messages from {@code messages.<lang>} parsed into templates of literal
+ * segments and {@code %placeholder%} slots. Templates are compiled at enable
+ * and on reload with the English fallback already applied, so rendering is a
+ * single pass into one builder with no configuration lookups.
+ */
+public class MessageTemplates {
+    private static final String FALLBACK = "en";
+
+    private final ShortCmdPlugin plugin;
+    private final Set<String> reportedMissing = ConcurrentHashMap.newKeySet();
+    private volatile Map<String, Map<String, Template>> languages = Collections.emptyMap();
+    private volatile Map<String, Template> current = Collections.emptyMap();
+
+    public MessageTemplates(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        reload();
+    }
+
+    public void reload() {
+        Map<String, Map<String, Template>> compiled = new HashMap<>();
+        ConfigurationSection messages = plugin.getConfig().getConfigurationSection("messages");
+        if (messages != null) {
+            for (String lang : messages.getKeys(false)) {
+                ConfigurationSection section = messages.getConfigurationSection(lang);
+                if (section == null) {
+                    continue;
+                }
+                Map<String, Template> templates = new HashMap<>();
+                for (String key : section.getKeys(false)) {
+                    if (section.isString(key)) {
+                        templates.put(key, Template.parse(section.getString(key)));
+                    }
+                }
+                compiled.put(lang, templates);
+            }
+        }
+
+        Map<String, Template> fallback = compiled.getOrDefault(FALLBACK, Collections.emptyMap());
+        for (Map.Entry<String, Map<String, Template>> entry : compiled.entrySet()) {
+            if (entry.getKey().equals(FALLBACK)) {
+                continue;
+            }
+            Set<String> missing = new TreeSet<>();
+            for (Map.Entry<String, Template> template : fallback.entrySet()) {
+                if (entry.getValue().putIfAbsent(template.getKey(), template.getValue()) == null) {
+                    missing.add(template.getKey());
+                }
+            }
+            if (!missing.isEmpty()) {
+                plugin.getLogger().warning("Messages missing for language '" + entry.getKey()
+                    + "', using English: " + missing);
+            }
+        }
+
+        reportedMissing.clear();
+        languages = compiled;
+        setLanguage(plugin.getConfig().getString("language", "ru"));
+    }
+
+    public void setLanguage(String lang) {
+        Map<String, Template> templates = languages.get(lang);
+        if (templates == null) {
+            templates = languages.getOrDefault(FALLBACK, Collections.emptyMap());
+        }
+        current = templates;
+    }
+
+    /**
+     * Renders {@code key} with {@code placeholders} given as name/value pairs,
+     * e.g. {@code "%name%", "test"}. Returns {@code null} if the key is unknown
+     * in both the current language and English; that is logged once per key.
+     */
+    public String render(String key, String... placeholders) {
+        Template template = current.get(key);
+        if (template == null) {
+            if (reportedMissing.add(key)) {
+                plugin.getLogger().warning("Message not found for key: " + key);
+            }
+            return null;
+        }
+        return template.render(placeholders);
+    }
+
+    static final class Template {
+        /** Literal text, or a placeholder name (including the % signs) when {@code slot[i]} is set. */
+        private final String[] parts;
+        private final boolean[] slot;
+        private final int literalLength;
+
+        private Template(String[] parts, boolean[] slot, int literalLength) {
+            this.parts = parts;
+            this.slot = slot;
+            this.literalLength = literalLength;
+        }
+
+        static Template parse(String message) {
+            List<String> parts = new ArrayList<>();
+            List<Boolean> slots = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int literalLength = 0;
+
+            int i = 0;
+            while (i < message.length()) {
+                char c = message.charAt(i);
+                int end = c == '%' ? placeholderEnd(message, i) : -1;
+                if (end > 0) {
+                    if (literal.length() > 0) {
+                        parts.add(literal.toString());
+                        slots.add(false);
+                        literalLength += literal.length();
+                        literal.setLength(0);
+                    }
+                    parts.add(message.substring(i, end + 1));
+                    slots.add(true);
+                    i = end + 1;
+                } else {
+                    literal.append(c == '&' ? '§' : c);
+                    i++;
+                }
+            }
+            if (literal.length() > 0) {
+                parts.add(literal.toString());
+                slots.add(false);
+                literalLength += literal.length();
+            }
+
+            boolean[] slot = new boolean[slots.size()];
+            for (int j = 0; j < slot.length; j++) {
+                slot[j] = slots.get(j);
+            }
+            return new Template(parts.toArray(new String[0]), slot, literalLength);
+        }
+
+        private static int placeholderEnd(String message, int start) {
+            for (int i = start + 1; i < message.length(); i++) {
+                char c = message.charAt(i);
+                if (c == '%') {
+                    return i > start + 1 ? i : -1;
+                }
+                if (!Character.isLetterOrDigit(c) && c != '-' && c != '_') {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        String render(String... placeholders) {
+            StringBuilder out = new StringBuilder(literalLength + 16 * placeholders.length);
+            for (int i = 0; i < parts.length; i++) {
+                if (!slot[i]) {
+                    out.append(parts[i]);
+                    continue;
+                }
+                String value = lookup(parts[i], placeholders);
+                if (value == null) {
+                    out.append(parts[i]);
+                    continue;
+                }
+                for (int j = 0; j < value.length(); j++) {
+                    char c = value.charAt(j);
+                    out.append(c == '&' ? '§' : c);
+                }
+            }
+            return out.toString();
+        }
+
+        private static String lookup(String name, String[] placeholders) {
+            for (int i = 0; i + 1 < placeholders.length; i += 2) {
+                if (placeholders[i].equals(name)) {
+                    return placeholders[i + 1];
+                }
+            }
+            return null;
+        }
+    }
+}
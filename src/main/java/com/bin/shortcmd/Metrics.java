@@ -0,0 +1,213 @@
+package com.bin.shortcmd;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process counters and latency histograms. Recording is lock-free: counters
+ * are {@link LongAdder}s and histograms have fixed buckets, so hot paths only
+ * pay for a map lookup and an atomic increment. Instruments are grouped into
+ * families by metric name, optionally split by a single label.
+ */
+public class Metrics {
+    /** Histogram bucket upper bounds in nanoseconds, 100µs to 10s. */
+    private static final long[] BOUNDS = {
+        100_000L, 500_000L, 1_000_000L, 5_000_000L, 10_000_000L, 50_000_000L,
+        100_000_000L, 500_000_000L, 1_000_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    public Counter counter(String name, String help, String label, String value) {
+        return (Counter) family(name, help, false, label).child(value);
+    }
+
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+
+    public Histogram histogram(String name, String help, String label, String value) {
+        return (Histogram) family(name, help, true, label).child(value);
+    }
+
+    private Family family(String name, String help, boolean histogram, String label) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, n -> new Family(n, help, histogram, label));
+        }
+        return family;
+    }
+
+    /**
+     * A point-in-time view of every instrument, sorted by name and label.
+     */
+    public List<Sample> snapshot() {
+        List<Sample> samples = new ArrayList<>();
+        for (Family family : families.values()) {
+            for (Map.Entry<String, Object> child : new ConcurrentSkipListMap<>(family.children).entrySet()) {
+                String name = family.label == null ? family.name
+                    : family.name + "{" + family.label + "=" + child.getKey() + "}";
+                samples.add(family.histogram ? new Sample(name, null, (Histogram) child.getValue())
+                    : new Sample(name, (Counter) child.getValue(), null));
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Writes all instruments in the Prometheus text exposition format.
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        for (Family family : families.values()) {
+            out.write("# HELP " + family.name + " " + family.help + "\n");
+            out.write("# TYPE " + family.name + " " + (family.histogram ? "histogram" : "counter") + "\n");
+            for (Map.Entry<String, Object> child : new ConcurrentSkipListMap<>(family.children).entrySet()) {
+                String labels = family.label == null ? ""
+                    : family.label + "=\"" + escape(child.getKey()) + "\"";
+                if (!family.histogram) {
+                    out.write(family.name + braces(labels) + " " + ((Counter) child.getValue()).get() + "\n");
+                    continue;
+                }
+                Histogram histogram = (Histogram) child.getValue();
+                String prefix = labels.isEmpty() ? "" : labels + ",";
+                long cumulative = 0;
+                for (int i = 0; i < BOUNDS.length; i++) {
+                    cumulative += histogram.buckets.get(i);
+                    out.write(family.name + "_bucket{" + prefix + "le=\"" + seconds(BOUNDS[i]) + "\"} "
+                        + cumulative + "\n");
+                }
+                cumulative += histogram.buckets.get(BOUNDS.length);
+                out.write(family.name + "_bucket{" + prefix + "le=\"+Inf\"} " + cumulative + "\n");
+                out.write(family.name + "_sum" + braces(labels) + " " + seconds(histogram.sum.sum()) + "\n");
+                out.write(family.name + "_count" + braces(labels) + " " + cumulative + "\n");
+            }
+        }
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final boolean histogram;
+        private final String label;
+        private final ConcurrentMap<String, Object> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, boolean histogram, String label) {
+            this.name = name;
+            this.help = help;
+            this.histogram = histogram;
+            this.label = label;
+        }
+
+        private Object child(String value) {
+            String key = value != null ? value : "";
+            Object child = children.get(key);
+            if (child == null) {
+                child = children.computeIfAbsent(key, k -> histogram ? new Histogram() : new Counter());
+            }
+            return child;
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final LongAdder sum = new LongAdder();
+
+        public void record(long nanos) {
+            int i = 0;
+            while (i < BOUNDS.length && nanos > BOUNDS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sum.add(nanos);
+        }
+
+        public long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        public long sumNanos() {
+            return sum.sum();
+        }
+
+        /**
+         * The upper bound of the bucket holding the {@code q} quantile, or
+         * {@code Long.MAX_VALUE} if it falls above the largest bound.
+         */
+        public long quantileNanos(double q) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * count);
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                cumulative += buckets.get(i);
+                if (cumulative >= rank) {
+                    return BOUNDS[i];
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * One instrument of a {@link #snapshot()}; exactly one of {@code counter}
+     * and {@code histogram} is set.
+     */
+    public static final class Sample {
+        public final String name;
+        public final Counter counter;
+        public final Histogram histogram;
+
+        private Sample(String name, Counter counter, Histogram histogram) {
+            this.name = name;
+            this.counter = counter;
+            this.histogram = histogram;
+        }
+    }
+}
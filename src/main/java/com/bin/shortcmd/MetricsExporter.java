@@ -0,0 +1,75 @@
+package com.bin.shortcmd;
+
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+
+/**
+ * Periodically writes {@link Metrics} to {@code metrics.file} in the data
+ * folder in Prometheus text format, off the main thread, so a node exporter
+ * textfile collector or a plain file scrape can pick it up.
+ */
+public class MetricsExporter {
+    private final ShortCmdPlugin plugin;
+    private BukkitTask task;
+    private File file;
+
+    public MetricsExporter(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        reload();
+    }
+
+    public synchronized void reload() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        file = new File(plugin.getDataFolder(), plugin.getConfig().getString("metrics.file", "metrics.prom"));
+        long seconds = plugin.getConfig().getLong("metrics.export-seconds", 60);
+        if (seconds > 0) {
+            task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::export,
+                seconds * 20L, seconds * 20L);
+        }
+    }
+
+    public void export() {
+        File target;
+        synchronized (this) {
+            target = file;
+        }
+        File tmp = new File(target.getPath() + ".tmp");
+        try {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),
+                    StandardCharsets.UTF_8))) {
+                plugin.getMetrics().writePrometheus(out);
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not write " + target.getName(), e);
+        }
+    }
+
+    /**
+     * Stops the timer and writes the final values.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (task != null) {
+                task.cancel();
+                task = null;
+            }
+        }
+        if (plugin.getConfig().getLong("metrics.export-seconds", 60) > 0) {
+            export();
+        }
+    }
+}
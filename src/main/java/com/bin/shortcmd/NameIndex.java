@@ -0,0 +1,77 @@
+package com.bin.shortcmd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sorted, case-insensitive index of storage names used for tab completion.
+ * A name can be registered more than once (e.g. as a link and as a script)
+ * and stays in the index until every registration is removed. Prefix lookups
+ * cost O(log n + k).
+ * <p>
+ * Names are grouped under their case-folded form, so every name matching a
+ * prefix sorts at or after the folded prefix regardless of its case.
+ */
+public class NameIndex {
+    private final TreeMap<String, TreeMap<String, Integer>> names = new TreeMap<>();
+    private int size;
+
+    public synchronized void add(String name) {
+        TreeMap<String, Integer> spellings = names.computeIfAbsent(fold(name), key -> new TreeMap<>());
+        if (spellings.merge(name, 1, Integer::sum) == 1) {
+            size++;
+        }
+    }
+
+    public synchronized void remove(String name) {
+        String key = fold(name);
+        TreeMap<String, Integer> spellings = names.get(key);
+        if (spellings == null || !spellings.containsKey(name)) {
+            return;
+        }
+        if (spellings.computeIfPresent(name, (spelling, count) -> count > 1 ? count - 1 : null) == null) {
+            size--;
+            if (spellings.isEmpty()) {
+                names.remove(key);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns up to {@code limit} names starting with {@code prefix}, ignoring case, in sorted order.
+     */
+    public synchronized List<String> complete(String prefix, int limit) {
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        String key = fold(prefix);
+        for (Map.Entry<String, TreeMap<String, Integer>> entry : names.tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key)) {
+                break;
+            }
+            for (String name : entry.getValue().keySet()) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Folds each character the way {@link String#CASE_INSENSITIVE_ORDER}
+     * compares it, keeping the length so prefixes stay prefixes.
+     */
+    static String fold(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
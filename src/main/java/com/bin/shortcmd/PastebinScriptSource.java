@@ -0,0 +1,31 @@
+package com.bin.shortcmd;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * A paste given by its bare Pastebin ID, fetched from the raw endpoint.
+ */
+public class PastebinScriptSource extends HttpScriptSource {
+    private static final String RAW_URL = "https://pastebin.com/raw/";
+
+    public PastebinScriptSource(String id, String userAgent, Metrics metrics) throws MalformedURLException {
+        super(new URL(RAW_URL + id), userAgent, metrics);
+    }
+
+    /**
+     * Whether {@code id} looks like a paste ID rather than a path or URL.
+     */
+    public static boolean isPasteId(String id) {
+        if (id.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package com.bin.shortcmd;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Thread-safe store of per-player execution modes ({@code true} = console).
+ * <p>
+ * Modes live on disk in 256 small shard files under {@code modes/}, keyed by
+ * the first byte of the UUID. Only players that are online are held in
+ * memory: their shard entry is read during async pre-login and dropped again
+ * on quit. The mode decides whether script lines run with console rights, so
+ * a player whose entry is not loaded yet is never treated as the console:
+ * the entry is read on the spot instead. Changes are coalesced and written by a background thread
+ * {@code modes.flush-delay-ms} after the first unsaved change, with a final
+ * flush on disable.
+ */
+public class PlayerModeStore implements Listener {
+    private static final int SHARDS = 256;
+
+    private final ShortCmdPlugin plugin;
+    private final File directory;
+    private final ConcurrentMap<UUID, Boolean> cache = new ConcurrentHashMap<>();
+    private final Map<UUID, Boolean> dirty = new HashMap<>();
+    private final Object ioLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private final long flushDelayMillis;
+    private ScheduledFuture<?> scheduledFlush;
+
+    public PlayerModeStore(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "modes");
+        this.flushDelayMillis = Math.max(0, plugin.getConfig().getLong("modes.flush-delay-ms", 2000));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ShortCmd-Modes");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (!directory.exists()) {
+            importLegacy(new File(plugin.getDataFolder(), "modes.yml"));
+        }
+    }
+
+    /**
+     * Loads the modes of players that are already online, e.g. after a
+     * reload, before the plugin starts running their scripts.
+     */
+    public void preloadOnline() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            cache.computeIfAbsent(player.getUniqueId(), this::load);
+        }
+    }
+
+    /**
+     * Whether {@code uuid} runs scripts as the console. Online players are
+     * normally loaded already; otherwise their shard entry is read now, and
+     * kept while they stay online.
+     */
+    public boolean isConsoleMode(UUID uuid) {
+        Boolean mode = cache.get(uuid);
+        if (mode != null) {
+            return mode;
+        }
+        if (plugin.getServer().getPlayer(uuid) != null) {
+            return cache.computeIfAbsent(uuid, this::load);
+        }
+        return load(uuid);
+    }
+
+    public void setConsoleMode(UUID uuid, boolean console) {
+        cache.put(uuid, console);
+        synchronized (this) {
+            dirty.put(uuid, console);
+            if (scheduledFlush == null) {
+                scheduledFlush = flusher.schedule(this::flush, flushDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            cache.computeIfAbsent(event.getUniqueId(), this::load);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        cache.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Writes all pending changes to their shard files.
+     */
+    public void flush() {
+        synchronized (ioLock) {
+            Map<UUID, Boolean> pending;
+            synchronized (this) {
+                scheduledFlush = null;
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                pending = new HashMap<>(dirty);
+                dirty.clear();
+            }
+
+            Map<Integer, Map<UUID, Boolean>> byShard = new HashMap<>();
+            for (Map.Entry<UUID, Boolean> entry : pending.entrySet()) {
+                byShard.computeIfAbsent(shard(entry.getKey()), k -> new HashMap<>())
+                    .put(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Integer, Map<UUID, Boolean>> entry : byShard.entrySet()) {
+                try {
+                    Properties shard = readShard(entry.getKey());
+                    for (Map.Entry<UUID, Boolean> mode : entry.getValue().entrySet()) {
+                        shard.setProperty(mode.getKey().toString(), mode.getValue().toString());
+                    }
+                    writeShard(entry.getKey(), shard);
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not save player modes", e);
+                    synchronized (this) {
+                        entry.getValue().forEach(dirty::putIfAbsent);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests an asynchronous flush of pending changes.
+     */
+    public void flushAsync() {
+        flusher.execute(this::flush);
+    }
+
+    public void shutdown() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    private boolean load(UUID uuid) {
+        synchronized (ioLock) {
+            synchronized (this) {
+                Boolean pending = dirty.get(uuid);
+                if (pending != null) {
+                    return pending;
+                }
+            }
+            try {
+                String value = readShard(shard(uuid)).getProperty(uuid.toString());
+                return value == null || Boolean.parseBoolean(value);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not read player mode of " + uuid, e);
+                return true;
+            }
+        }
+    }
+
+    private Properties readShard(int shard) throws IOException {
+        Properties properties = new Properties();
+        File file = shardFile(shard);
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    private void writeShard(int shard, Properties properties) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create modes directory");
+        }
+        File file = shardFile(shard);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Streams the old modes.yml into shard files without loading it into a
+     * YAML tree, then keeps it as modes.yml.imported.
+     */
+    private void importLegacy(File legacyFile) {
+        if (!legacyFile.isFile()) {
+            return;
+        }
+        Properties[] shards = new Properties[SHARDS];
+        int imported = 0;
+        try (BufferedReader reader = Files.newBufferedReader(legacyFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                int colon = line.indexOf(':');
+                if (line.isEmpty() || line.charAt(0) == '#' || colon < 0) {
+                    continue;
+                }
+                String key = line.substring(0, colon).trim().replace("'", "").replace("\"", "");
+                String value = line.substring(colon + 1).trim();
+                UUID uuid;
+                try {
+                    uuid = UUID.fromString(key);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                int shard = shard(uuid);
+                if (shards[shard] == null) {
+                    shards[shard] = new Properties();
+                }
+                shards[shard].setProperty(uuid.toString(), String.valueOf(Boolean.parseBoolean(value)));
+                imported++;
+            }
+
+            for (int i = 0; i < SHARDS; i++) {
+                if (shards[i] != null) {
+                    writeShard(i, shards[i]);
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not import modes.yml", e);
+            return;
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            plugin.getLogger().warning("Failed to create modes directory");
+        }
+        File renamed = new File(legacyFile.getPath() + ".imported");
+        if (legacyFile.renameTo(renamed)) {
+            plugin.getLogger().info("Imported " + imported + " player modes from modes.yml (kept as "
+                + renamed.getName() + ")");
+        }
+    }
+
+    private File shardFile(int shard) {
+        return new File(directory, String.format("%02x.properties", shard));
+    }
+
+    private static int shard(UUID uuid) {
+        return (int) (uuid.getMostSignificantBits() >>> 56) & 0xFF;
+    }
+}
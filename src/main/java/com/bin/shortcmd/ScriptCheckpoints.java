@@ -0,0 +1,300 @@
+package com.bin.shortcmd;
+
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * How far each running script got, kept in {@code checkpoints.properties} so
+ * a script stopped by a restart, a crash or its player leaving can be resumed
+ * with {@code /shortcmd resume <id>}.
+ * <p>
+ * A checkpoint is the run id, what was run, the hash of its content and the
+ * number of lines that finished. Only positions before the first directive
+ * or {@code ${name}} reference of a script are kept: past it the lines run
+ * depend on variables, online players and included scripts, and no longer
+ * match lines of the source. Jobs only bump a counter; the positions are
+ * written together off the main thread every {@code jobs.checkpoint-ms}
+ * milliseconds when something changed, and once more on disable. After a
+ * crash, up to that many milliseconds of lines run again on resume.
+ */
+public class ScriptCheckpoints {
+    /** A saved script or link, resumed by name. */
+    public static final String STORAGE = "storage";
+    /** A single source from {@code /shortcmd run}. */
+    public static final String RUN = "run";
+
+    private final ShortCmdPlugin plugin;
+    private final File file;
+    private final Map<Integer, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+    private final int lastId;
+    private BukkitTask task;
+    private String written;
+
+    public ScriptCheckpoints(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "checkpoints.properties");
+        this.lastId = load();
+        reload();
+    }
+
+    public synchronized void reload() {
+        if (task != null) {
+            task.cancel();
+        }
+        long millis = Math.max(50, plugin.getConfig().getLong("jobs.checkpoint-ms", 1000));
+        long ticks = (millis + 49) / 50;
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::flush, ticks, ticks);
+    }
+
+    /**
+     * The highest id found on disk at startup, so new runs do not reuse the
+     * id of a script that can still be resumed.
+     */
+    public int getLastId() {
+        return lastId;
+    }
+
+    /**
+     * Starts recording the progress of {@code job} under {@code id}, counting
+     * from line {@code offset} of the script that {@code expander} expands.
+     */
+    public void track(int id, String kind, String target, String label, String hash, int offset, ScriptJob job,
+                      ScriptExpander expander) {
+        Checkpoint checkpoint = new Checkpoint(id, kind, target, label, hash, offset, System.currentTimeMillis());
+        checkpoint.expander = expander;
+        checkpoint.job = job;
+        checkpoints.put(id, checkpoint);
+    }
+
+    /**
+     * Stops recording {@code id}. With {@code keep} the last position stays
+     * on disk so the run can be resumed, as long as it is still a line of
+     * the source; otherwise the checkpoint is dropped.
+     */
+    public void untrack(int id, boolean keep) {
+        Checkpoint checkpoint = checkpoints.get(id);
+        if (checkpoint == null) {
+            return;
+        }
+        if (keep && checkpoint.isResumable()) {
+            checkpoint.offset = checkpoint.getLine();
+            checkpoint.job = null;
+            checkpoint.expander = null;
+        } else {
+            checkpoints.remove(id);
+        }
+    }
+
+    /**
+     * Removes and returns the stopped checkpoint {@code id} for a resume, or
+     * {@code null} if there is none or its script is still running.
+     */
+    public Checkpoint take(int id) {
+        Checkpoint checkpoint = checkpoints.get(id);
+        if (checkpoint == null || checkpoint.isRunning()) {
+            return null;
+        }
+        return checkpoints.remove(id, checkpoint) ? checkpoint : null;
+    }
+
+    /**
+     * Puts back a checkpoint whose resume did not start.
+     */
+    public void restore(Checkpoint checkpoint) {
+        checkpoints.putIfAbsent(checkpoint.id, checkpoint);
+    }
+
+    /**
+     * The checkpoints of scripts that stopped before their end, by id.
+     */
+    public Collection<Checkpoint> getStopped() {
+        List<Checkpoint> stopped = new ArrayList<>();
+        for (Checkpoint checkpoint : checkpoints.values()) {
+            if (!checkpoint.isRunning()) {
+                stopped.add(checkpoint);
+            }
+        }
+        stopped.sort((a, b) -> Integer.compare(a.id, b.id));
+        return stopped;
+    }
+
+    /**
+     * Writes the current positions if any changed since the last write.
+     */
+    public synchronized void flush() {
+        Properties properties = new Properties();
+        StringBuilder state = new StringBuilder();
+        for (Checkpoint checkpoint : checkpoints.values()) {
+            if (!checkpoint.isResumable()) {
+                continue;
+            }
+            String prefix = checkpoint.id + ".";
+            int line = checkpoint.getLine();
+            properties.setProperty(prefix + "kind", checkpoint.kind);
+            properties.setProperty(prefix + "target", checkpoint.target);
+            properties.setProperty(prefix + "label", checkpoint.label);
+            properties.setProperty(prefix + "hash", checkpoint.hash);
+            properties.setProperty(prefix + "line", String.valueOf(line));
+            properties.setProperty(prefix + "created", String.valueOf(checkpoint.createdAt));
+            state.append(checkpoint.id).append(':').append(line).append(',');
+        }
+        if (state.toString().equals(written)) {
+            return;
+        }
+        try {
+            if (properties.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                File tmp = new File(file.getPath() + ".tmp");
+                try (OutputStream out = new FileOutputStream(tmp)) {
+                    properties.store(out, null);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            written = state.toString();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not write " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Stops the timer and writes the final positions; scripts still running
+     * now can be resumed after the next start.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (task != null) {
+                task.cancel();
+                task = null;
+            }
+        }
+        flush();
+    }
+
+    private int load() {
+        if (!file.isFile()) {
+            return 0;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read " + file.getName(), e);
+            return 0;
+        }
+        int last = 0;
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.endsWith(".kind")) {
+                continue;
+            }
+            String prefix = key.substring(0, key.length() - "kind".length());
+            try {
+                int id = Integer.parseInt(prefix.substring(0, prefix.length() - 1));
+                Checkpoint checkpoint = new Checkpoint(id, properties.getProperty(key),
+                    properties.getProperty(prefix + "target", ""), properties.getProperty(prefix + "label", ""),
+                    properties.getProperty(prefix + "hash", ""),
+                    Integer.parseInt(properties.getProperty(prefix + "line", "0")),
+                    Long.parseLong(properties.getProperty(prefix + "created", "0")));
+                checkpoints.put(id, checkpoint);
+                last = Math.max(last, id);
+            } catch (NumberFormatException e) {
+                plugin.getLogger().warning("Dropping invalid checkpoint " + prefix + "*");
+            }
+        }
+        return last;
+    }
+
+    /**
+     * The position of one run.
+     */
+    public static final class Checkpoint {
+        private final int id;
+        private final String kind;
+        private final String target;
+        private final String label;
+        private final String hash;
+        private final long createdAt;
+        private volatile int offset;
+        private volatile ScriptJob job;
+        private volatile ScriptExpander expander;
+
+        private Checkpoint(int id, String kind, String target, String label, String hash, int offset,
+                           long createdAt) {
+            this.id = id;
+            this.kind = kind;
+            this.target = target;
+            this.label = label;
+            this.hash = hash;
+            this.offset = offset;
+            this.createdAt = createdAt;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * {@link #STORAGE} or {@link #RUN}.
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * The saved name or the source to fetch again.
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        /**
+         * Lines of the script that finished. They are counted after
+         * directives are expanded, which is also the line of the source
+         * while {@link #isResumable()}.
+         */
+        public int getLine() {
+            ScriptJob running = job;
+            return running != null ? offset + running.getCommitted() : offset;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        boolean isRunning() {
+            return job != null;
+        }
+
+        /**
+         * Whether the run has not got past the lines its script passes
+         * through unchanged, so it can be resumed from {@link #getLine()}.
+         */
+        boolean isResumable() {
+            ScriptExpander running = expander;
+            return running == null || getLine() <= running.getVerbatimLines();
+        }
+    }
+}
@@ -0,0 +1,699 @@
+package com.bin.shortcmd;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Expands the script directives on top of the plain line format, one command
+ * at a time as the dispatcher pulls it:
+ * <pre>
+ * &#64;set rank = vip
+ * &#64;for p in players
+ *   lp user ${p} parent add ${rank}
+ * &#64;end
+ * &#64;for x in 0..100 step 10
+ *   &#64;for z in 0..100 step 10
+ *     setblock ${x} 64 ${z} stone
+ *   &#64;end
+ * &#64;end
+ * &#64;for kit in starter, tools
+ *   kit ${kit}
+ * &#64;end
+ * &#64;include welcome
+ * </pre>
+ * Lines outside loops are read from the source as they are needed, so large
+ * plain scripts still stream. A loop body is parsed once and replayed with a
+ * counter, so a million iterations cost no more memory than one; only
+ * {@code players} takes a snapshot of the online player names when the loop
+ * starts. {@code @include} streams another saved script with the same
+ * variables. Unknown {@code ${name}} references are left as they are.
+ * <p>
+ * Malformed directives are reported to {@link Context#onError(String)} and
+ * skipped together with their loop body. Each line is expanded on the main
+ * thread while the dispatcher waits for it, so directives that run
+ * {@link #MAX_IDLE_STEPS} steps without producing a command (for example a
+ * huge loop of {@code @set}) are reported the same way and end the script.
+ */
+public class ScriptExpander implements CompiledScript.Cursor {
+    static final int MAX_INCLUDE_DEPTH = 8;
+    static final int MAX_IDLE_STEPS = 100_000;
+
+    private final Context context;
+    private final Map<String, String> variables = new HashMap<>();
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private String next;
+    private CompiledScript.Cursor nextVerdict;
+    private boolean currentBlocked;
+    private CommandLine currentParsed;
+    private int emitted;
+    private volatile int verbatim = Integer.MAX_VALUE;
+
+    public ScriptExpander(Iterator<String> lines, Context context) {
+        this.context = context;
+        frames.push(new StreamFrame(lines, null));
+    }
+
+    @Override
+    public boolean hasNext() {
+        int steps = 0;
+        while (next == null) {
+            Frame frame = frames.peek();
+            if (frame == null) {
+                return false;
+            }
+            if (++steps > MAX_IDLE_STEPS) {
+                context.onError("Directives ran " + MAX_IDLE_STEPS + " steps without a command, stopping the script");
+                close();
+                return false;
+            }
+            if (!frame.step()) {
+                frames.pop();
+                frame.close();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String line = next;
+        next = null;
+        currentBlocked = nextVerdict != null ? nextVerdict.isBlocked() : context.getBlocklist().isBlocked(line);
+        currentParsed = nextVerdict != null ? nextVerdict.getCommandLine() : null;
+        nextVerdict = null;
+        return line;
+    }
+
+    /**
+     * The blocklist verdict of the last expanded line. Lines passed through
+     * unchanged from a saved script reuse its precomputed verdict.
+     */
+    @Override
+    public boolean isBlocked() {
+        return currentBlocked;
+    }
+
+    /**
+     * The compile-time split of the last line if it was passed through
+     * unchanged from a saved script, otherwise {@code null}.
+     */
+    @Override
+    public CommandLine getCommandLine() {
+        return currentParsed;
+    }
+
+    @Override
+    public void close() {
+        while (!frames.isEmpty()) {
+            frames.pop().close();
+        }
+    }
+
+    /**
+     * How many lines were passed through as they are in the source before
+     * the first directive or {@code ${name}} reference, or
+     * {@link Integer#MAX_VALUE} if there was none so far. Up to there a count
+     * of expanded lines is also a line of the source. May be called from any
+     * thread.
+     */
+    public int getVerbatimLines() {
+        return verbatim;
+    }
+
+    private void emit(String line, CompiledScript.Cursor verdict) {
+        next = line;
+        nextVerdict = verdict;
+        emitted++;
+    }
+
+    private void expanding() {
+        if (verbatim == Integer.MAX_VALUE) {
+            verbatim = emitted;
+        }
+    }
+
+    private void include(String name) {
+        int depth = 0;
+        for (Frame frame : frames) {
+            if (frame instanceof StreamFrame && ((StreamFrame) frame).include != null) {
+                if (((StreamFrame) frame).include.equalsIgnoreCase(name)) {
+                    context.onError("@include " + name + " includes itself");
+                    return;
+                }
+                depth++;
+            }
+        }
+        if (depth >= MAX_INCLUDE_DEPTH) {
+            context.onError("@include " + name + " is nested deeper than " + MAX_INCLUDE_DEPTH);
+            return;
+        }
+        CompiledScript script = context.getScript(name);
+        if (script == null) {
+            context.onError("@include " + name + ": script not found");
+            return;
+        }
+        try {
+            frames.push(new StreamFrame(script.cursor(), name));
+        } catch (IOException e) {
+            context.onError("@include " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void startLoop(Loop loop) {
+        Values values = loop.values(this);
+        if (values != null && !loop.body.isEmpty()) {
+            frames.push(new LoopFrame(loop, values));
+        }
+    }
+
+    /**
+     * Parses the directive lines of a loop body, from {@code from} up to
+     * {@code to}, into nodes. Lines are already trimmed.
+     */
+    private List<Node> parseBlock(List<String> lines, int from, int to) {
+        List<Node> nodes = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            String line = lines.get(i++);
+            Directive directive = line.startsWith("@") ? Directive.of(line) : null;
+            if (directive == null) {
+                nodes.add(new Literal(Text.parse(line)));
+                continue;
+            }
+            String argument = directive.argument(line);
+            switch (directive) {
+                case SET:
+                    Node set = Assignment.parse(argument, context);
+                    if (set != null) {
+                        nodes.add(set);
+                    }
+                    break;
+                case INCLUDE:
+                    nodes.add(new Include(Text.parse(argument)));
+                    break;
+                case FOR:
+                    int end = matchingEnd(lines, i, to);
+                    if (end < 0) {
+                        context.onError("@for " + argument + " has no @end");
+                        return nodes;
+                    }
+                    Loop loop = Loop.parse(argument, context);
+                    if (loop != null) {
+                        loop.body.addAll(parseBlock(lines, i, end));
+                        nodes.add(loop);
+                    }
+                    i = end + 1;
+                    break;
+                default:
+                    context.onError("@end without @for");
+            }
+        }
+        return nodes;
+    }
+
+    private static int matchingEnd(List<String> lines, int from, int to) {
+        int depth = 1;
+        for (int i = from; i < to; i++) {
+            Directive directive = lines.get(i).startsWith("@") ? Directive.of(lines.get(i)) : null;
+            if (directive == Directive.FOR) {
+                depth++;
+            } else if (directive == Directive.END && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * What the expander needs from the plugin.
+     */
+    public interface Context {
+        Blocklist getBlocklist();
+
+        /**
+         * Names of the players online right now; called on the main thread.
+         */
+        List<String> getOnlinePlayers();
+
+        /**
+         * A saved script for {@code @include}, or {@code null} if unknown.
+         */
+        CompiledScript getScript(String name);
+
+        void onError(String error);
+    }
+
+    private enum Directive {
+        SET("@set"), FOR("@for"), END("@end"), INCLUDE("@include");
+
+        private final String keyword;
+
+        Directive(String keyword) {
+            this.keyword = keyword;
+        }
+
+        static Directive of(String line) {
+            for (Directive directive : values()) {
+                String keyword = directive.keyword;
+                if (line.regionMatches(true, 0, keyword, 0, keyword.length())
+                    && (line.length() == keyword.length() || Character.isWhitespace(line.charAt(keyword.length())))) {
+                    return directive;
+                }
+            }
+            return null;
+        }
+
+        String argument(String line) {
+            return line.substring(keyword.length()).trim();
+        }
+    }
+
+    private interface Frame {
+        /**
+         * Does one unit of work, possibly emitting a line or pushing a frame.
+         * Returns {@code false} once the frame is exhausted.
+         */
+        boolean step();
+
+        void close();
+    }
+
+    /**
+     * Reads raw lines from the script source or an included script.
+     */
+    private final class StreamFrame implements Frame {
+        private final Iterator<String> lines;
+        private final String include;
+
+        private StreamFrame(Iterator<String> lines, String include) {
+            this.lines = lines;
+            this.include = include;
+        }
+
+        @Override
+        public boolean step() {
+            if (!lines.hasNext()) {
+                return false;
+            }
+            String raw = lines.next();
+            String line = raw.trim();
+            Directive directive = line.startsWith("@") ? Directive.of(line) : null;
+            if (directive != null || raw.contains("${")) {
+                expanding();
+            }
+            if (directive == null) {
+                if (raw.contains("${")) {
+                    emit(Text.parse(raw).render(variables), null);
+                } else {
+                    emit(raw, lines instanceof CompiledScript.Cursor ? (CompiledScript.Cursor) lines : null);
+                }
+                return true;
+            }
+
+            String argument = directive.argument(line);
+            switch (directive) {
+                case SET:
+                    Assignment set = Assignment.parse(argument, context);
+                    if (set != null) {
+                        set.apply(variables);
+                    }
+                    break;
+                case INCLUDE:
+                    include(Text.parse(argument).render(variables));
+                    break;
+                case FOR:
+                    List<String> body = readBody();
+                    if (body == null) {
+                        context.onError("@for " + argument + " has no @end");
+                        break;
+                    }
+                    Loop loop = Loop.parse(argument, context);
+                    if (loop != null) {
+                        loop.body.addAll(parseBlock(body, 0, body.size()));
+                        startLoop(loop);
+                    }
+                    break;
+                default:
+                    context.onError("@end without @for");
+            }
+            return true;
+        }
+
+        /**
+         * Reads trimmed lines up to the {@code @end} matching an {@code @for}
+         * that was just read, or returns {@code null} if the source ends first.
+         */
+        private List<String> readBody() {
+            List<String> body = new ArrayList<>();
+            int depth = 1;
+            while (lines.hasNext()) {
+                String line = lines.next().trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                Directive directive = line.startsWith("@") ? Directive.of(line) : null;
+                if (directive == Directive.FOR) {
+                    depth++;
+                } else if (directive == Directive.END && --depth == 0) {
+                    return body;
+                }
+                body.add(line);
+            }
+            return null;
+        }
+
+        @Override
+        public void close() {
+            if (lines instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) lines).close();
+                } catch (Exception ignored) {
+                    // Nothing left to release
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays a parsed loop body once per value.
+     */
+    private final class LoopFrame implements Frame {
+        private final Loop loop;
+        private final Values values;
+        private final String previous;
+        private int position;
+
+        private LoopFrame(Loop loop, Values values) {
+            this.loop = loop;
+            this.values = values;
+            this.previous = variables.get(loop.variable);
+            this.position = loop.body.size();
+        }
+
+        @Override
+        public boolean step() {
+            if (position >= loop.body.size()) {
+                if (!values.hasNext()) {
+                    return false;
+                }
+                variables.put(loop.variable, values.next());
+                position = 0;
+            }
+            loop.body.get(position++).run(ScriptExpander.this);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                variables.put(loop.variable, previous);
+            } else {
+                variables.remove(loop.variable);
+            }
+        }
+    }
+
+    private interface Node {
+        void run(ScriptExpander expander);
+    }
+
+    private static final class Literal implements Node {
+        private final Text text;
+
+        private Literal(Text text) {
+            this.text = text;
+        }
+
+        @Override
+        public void run(ScriptExpander expander) {
+            expander.emit(text.render(expander.variables), null);
+        }
+    }
+
+    private static final class Include implements Node {
+        private final Text name;
+
+        private Include(Text name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run(ScriptExpander expander) {
+            expander.include(name.render(expander.variables));
+        }
+    }
+
+    private static final class Assignment implements Node {
+        private final String variable;
+        private final Text value;
+
+        private Assignment(String variable, Text value) {
+            this.variable = variable;
+            this.value = value;
+        }
+
+        /**
+         * Parses {@code name = value}.
+         */
+        static Assignment parse(String argument, Context context) {
+            int equals = argument.indexOf('=');
+            String variable = equals > 0 ? argument.substring(0, equals).trim() : "";
+            if (!isName(variable)) {
+                context.onError("Invalid @set " + argument + ", expected @set <name> = <value>");
+                return null;
+            }
+            return new Assignment(variable, Text.parse(argument.substring(equals + 1).trim()));
+        }
+
+        void apply(Map<String, String> variables) {
+            variables.put(variable, value.render(variables));
+        }
+
+        @Override
+        public void run(ScriptExpander expander) {
+            apply(expander.variables);
+        }
+    }
+
+    private static final class Loop implements Node {
+        private final String variable;
+        private final Text spec;
+        private final List<Node> body = new ArrayList<>();
+
+        private Loop(String variable, Text spec) {
+            this.variable = variable;
+            this.spec = spec;
+        }
+
+        /**
+         * Parses {@code <name> in <players|from..to [step n]|a, b, c>}.
+         */
+        static Loop parse(String argument, Context context) {
+            String[] parts = argument.split("\\s+", 3);
+            if (parts.length < 3 || !isName(parts[0]) || !parts[1].equalsIgnoreCase("in")) {
+                context.onError("Invalid @for " + argument + ", expected @for <name> in <values>");
+                return null;
+            }
+            return new Loop(parts[0], Text.parse(parts[2]));
+        }
+
+        /**
+         * Evaluates the value spec when the loop starts, or returns
+         * {@code null} after reporting an invalid spec.
+         */
+        Values values(ScriptExpander expander) {
+            String values = spec.render(expander.variables).trim();
+            if (values.equalsIgnoreCase("players")) {
+                return new ListValues(expander.context.getOnlinePlayers());
+            }
+            int dots = values.indexOf("..");
+            if (dots < 0) {
+                List<String> items = new ArrayList<>();
+                for (String item : values.split(",")) {
+                    if (!item.trim().isEmpty()) {
+                        items.add(item.trim());
+                    }
+                }
+                return new ListValues(items);
+            }
+            try {
+                String rest = values.substring(dots + 2).trim();
+                long step = 0;
+                int stepAt = rest.toLowerCase(Locale.ROOT).indexOf("step");
+                if (stepAt >= 0) {
+                    step = Long.parseLong(rest.substring(stepAt + 4).trim());
+                    rest = rest.substring(0, stepAt).trim();
+                }
+                long from = Long.parseLong(values.substring(0, dots).trim());
+                long to = Long.parseLong(rest);
+                if (step == 0) {
+                    step = from <= to ? 1 : -1;
+                }
+                if ((step > 0) != (from <= to) && from != to) {
+                    expander.context.onError("Range " + values + " never reaches its end");
+                    return null;
+                }
+                return new RangeValues(from, to, step);
+            } catch (NumberFormatException e) {
+                expander.context.onError("Invalid range " + values + ", expected <from>..<to> [step <n>]");
+                return null;
+            }
+        }
+
+        @Override
+        public void run(ScriptExpander expander) {
+            expander.startLoop(this);
+        }
+    }
+
+    private interface Values {
+        boolean hasNext();
+
+        String next();
+    }
+
+    private static final class ListValues implements Values {
+        private final List<String> values;
+        private int index;
+
+        private ListValues(List<String> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < values.size();
+        }
+
+        @Override
+        public String next() {
+            return values.get(index++);
+        }
+    }
+
+    /**
+     * An inclusive range; only the current value is kept.
+     */
+    private static final class RangeValues implements Values {
+        private final long to;
+        private final long step;
+        private long current;
+        private boolean done;
+
+        private RangeValues(long from, long to, long step) {
+            this.current = from;
+            this.to = to;
+            this.step = step;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !done;
+        }
+
+        @Override
+        public String next() {
+            long value = current;
+            if (step > 0 ? to - value < step : value - to < -step) {
+                done = true;
+            } else {
+                current += step;
+            }
+            return Long.toString(value);
+        }
+    }
+
+    private static boolean isName(String name) {
+        if (name.isEmpty() || !(Character.isLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A line split into literal text and {@code ${name}} references.
+     */
+    private static final class Text {
+        /** Literal text, or a variable name when {@code variable[i]} is set. */
+        private final String[] parts;
+        private final boolean[] variable;
+
+        private Text(String[] parts, boolean[] variable) {
+            this.parts = parts;
+            this.variable = variable;
+        }
+
+        static Text parse(String line) {
+            List<String> parts = new ArrayList<>();
+            List<Boolean> variables = new ArrayList<>();
+            int start = 0;
+            int open;
+            while ((open = line.indexOf("${", start)) >= 0) {
+                int close = line.indexOf('}', open + 2);
+                if (close < 0 || !isName(line.substring(open + 2, close))) {
+                    parts.add(line.substring(start, open + 2));
+                    variables.add(false);
+                    start = open + 2;
+                    continue;
+                }
+                if (open > start) {
+                    parts.add(line.substring(start, open));
+                    variables.add(false);
+                }
+                parts.add(line.substring(open + 2, close));
+                variables.add(true);
+                start = close + 1;
+            }
+            if (start < line.length()) {
+                parts.add(line.substring(start));
+                variables.add(false);
+            }
+
+            boolean[] variable = new boolean[variables.size()];
+            for (int i = 0; i < variable.length; i++) {
+                variable[i] = variables.get(i);
+            }
+            return new Text(parts.toArray(new String[0]), variable);
+        }
+
+        String render(Map<String, String> values) {
+            if (parts.length == 0) {
+                return "";
+            }
+            if (parts.length == 1 && !variable[0]) {
+                return parts[0];
+            }
+            StringBuilder out = new StringBuilder();
+            for (int i = 0; i < parts.length; i++) {
+                if (!variable[i]) {
+                    out.append(parts[i]);
+                    continue;
+                }
+                String value = values.get(parts[i]);
+                if (value != null) {
+                    out.append(value);
+                } else {
+                    out.append("${").append(parts[i]).append('}');
+                }
+            }
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,663 @@
+package com.bin.shortcmd;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Downloads and parses scripts on a worker pool, then hands the parsed
+ * command list back to the server main thread through the Bukkit scheduler.
+ * Single fetches and saves use {@code fetch.threads} workers; the sources of
+ * a multi-source command run on a separate pool of up to
+ * {@code fetch.max-sources} threads, so they download side by side.
+ * At most {@code fetch.per-host-limit} requests run against the same host
+ * at a time; the others wait in a queue of that host without holding a
+ * worker. Bodies are limited to {@code fetch.max-response-bytes}
+ * after decompression. Concurrent requests for the same source share one
+ * download: later callers wait for the download already in flight instead
+ * of starting their own.
+ */
+public class ScriptFetcher {
+    private final ShortCmdPlugin plugin;
+    private final ContentCache cache;
+    private final HostHealth health;
+    private final ExecutorService workers;
+    private final ExecutorService sourceWorkers;
+    private final Map<String, HostSlots> hostSlots = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+    private final String userAgent;
+    private final Metrics.Counter linesParsed;
+    private final Metrics.Counter coalesced;
+    private volatile int perHostLimit;
+    private volatile long maxResponseBytes;
+
+    public ScriptFetcher(ShortCmdPlugin plugin, ContentCache cache, HostHealth health, int threads) {
+        this.plugin = plugin;
+        this.cache = cache;
+        this.health = health;
+        this.userAgent = "ShortCmd/" + plugin.getDescription().getVersion();
+        this.linesParsed = plugin.getMetrics().counter("shortcmd_lines_parsed_total", "Script lines parsed from sources");
+        this.coalesced = plugin.getMetrics().counter("shortcmd_fetches_coalesced_total",
+            "Fetches that joined a download already in flight");
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "ShortCmd-Fetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int sourceThreads = Math.max(1, plugin.getConfig().getInt("fetch.max-sources", 32));
+        ThreadPoolExecutor sources = new ThreadPoolExecutor(sourceThreads, sourceThreads, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "ShortCmd-Source-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        sources.allowCoreThreadTimeOut(true);
+        this.sourceWorkers = sources;
+        reload();
+    }
+
+    public void reload() {
+        perHostLimit = Math.max(1, plugin.getConfig().getInt("fetch.per-host-limit", 2));
+        maxResponseBytes = Math.max(1, plugin.getConfig().getLong("fetch.max-response-bytes", 8388608));
+        for (HostSlots slots : hostSlots.values()) {
+            slots.resize(perHostLimit);
+        }
+    }
+
+    /**
+     * Parses a source argument: {@code http(s)://} URLs, {@code file:<path>}
+     * inside the plugin folder, or a bare Pastebin ID.
+     *
+     * @throws IllegalArgumentException if {@code spec} is none of these
+     */
+    public ScriptSource resolve(String spec) {
+        try {
+            if (spec.startsWith("http://") || spec.startsWith("https://")) {
+                return new HttpScriptSource(new URL(spec), userAgent, plugin.getMetrics());
+            }
+            if (spec.startsWith("file:")) {
+                return FileScriptSource.resolve(plugin.getDataFolder(), spec.substring("file:".length()));
+            }
+            if (PastebinScriptSource.isPasteId(spec)) {
+                return new PastebinScriptSource(spec, userAgent, plugin.getMetrics());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid source " + spec + ": " + e.getMessage(), e);
+        }
+        throw new IllegalArgumentException("Invalid source " + spec);
+    }
+
+    /**
+     * Fetches {@code source} off the main thread. The callback is always invoked
+     * on the main thread, and never after the plugin has been disabled.
+     */
+    public void fetch(ScriptSource source, Callback<List<String>> callback) {
+        deliver(shared("get:" + source.getLink(),
+            () -> throttled(source, requestTimeout(), workers, null, () -> download(source))), callback);
+    }
+
+    /**
+     * Like {@link #fetch}, but answers from the {@link ContentCache} while the
+     * entry is fresh, revalidates it with a conditional GET afterwards and
+     * falls back to the cached copy when the origin is unreachable. Local
+     * sources are always read directly.
+     */
+    public void fetchCached(ScriptSource source, Callback<List<String>> callback) {
+        deliver(shared("cached:" + source.getLink(),
+            () -> throttled(source, requestTimeout(), workers, null, () -> downloadCached(source))), callback);
+    }
+
+    /**
+     * Streams {@code source} through {@code ingest} into {@code target} without
+     * holding the whole body in memory.
+     */
+    public void fetchScript(ScriptSource source, File target, ScriptIngest ingest,
+                            Callback<ScriptIngest.Result> callback) {
+        deliver(throttled(source, requestTimeout(), workers, null, () -> downloadScript(source, target, ingest)),
+            callback);
+    }
+
+    /**
+     * Starts downloading all {@code sources} concurrently. The returned list
+     * is in the same order and its entries complete independently. Cancelling
+     * an entry only detaches it; the download goes on for other callers
+     * sharing it.
+     */
+    public List<FetchedSource<List<String>>> fetchAll(List<ScriptSource> scripts) {
+        long timeoutMillis = Math.max(1, plugin.getConfig().getLong("fetch.source-timeout-ms", 30000));
+        List<FetchedSource<List<String>>> sources = new ArrayList<>(scripts.size());
+        for (ScriptSource script : scripts) {
+            FetchedSource<List<String>> source = new FetchedSource<>(script.getLink());
+            shared("get:" + script.getLink(),
+                () -> throttled(script, timeoutMillis, sourceWorkers, null, () -> download(script)))
+                .whenComplete((lines, error) -> {
+                    if (error != null) {
+                        source.fail(error);
+                    } else {
+                        source.complete(lines);
+                    }
+                });
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, source::expire,
+                Math.max(1, (timeoutMillis + 49) / 50));
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    /**
+     * Downloads all {@code scripts} concurrently, each streamed to its own part
+     * file, then joins them in order through {@code ingest} into {@code target}.
+     * With {@code skipFailed} the script is built from the sources that
+     * succeeded; otherwise the first failed source fails the whole save with a
+     * {@link SourceException}. The callback runs once every source is done;
+     * the returned list tells which sources were skipped.
+     */
+    public List<FetchedSource<ScriptIngest.Result>> fetchScripts(List<ScriptSource> scripts, File target,
+                                                                 ScriptIngest ingest, boolean skipFailed,
+                                                                 Callback<ScriptIngest.Result> callback) {
+        ScriptIngest perSource = ingest.withInlineMaxLines(-1).withCompression(false);
+        List<FetchedSource<ScriptIngest.Result>> sources = fetchAll(scripts,
+            (source, index) -> downloadScript(source, new File(target.getPath() + ".src" + index), perSource),
+            ScriptFetcher::deletePart);
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[sources.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = sources.get(i).future();
+        }
+        try {
+            CompletableFuture.allOf(futures).whenCompleteAsync((ignored, error) -> {
+                List<File> parts = new ArrayList<>();
+                try {
+                    for (FetchedSource<ScriptIngest.Result> source : sources) {
+                        Throwable failure = source.getError();
+                        if (failure != null) {
+                            if (!skipFailed) {
+                                throw new SourceException(source.getLink(), failure);
+                            }
+                            continue;
+                        }
+                        if (source.getResult().getFile() != null) {
+                            parts.add(source.getResult().getFile());
+                        }
+                    }
+                    ScriptIngest.Result merged;
+                    try (InputStream in = concat(parts)) {
+                        merged = ingest.ingest(in, target);
+                    }
+                    runSync(() -> callback.onSuccess(merged));
+                } catch (Exception e) {
+                    runSync(() -> callback.onFailure(e));
+                } finally {
+                    for (FetchedSource<ScriptIngest.Result> source : sources) {
+                        deletePart(source.getResult());
+                    }
+                }
+            }, workers);
+        } catch (RejectedExecutionException e) {
+            callback.onFailure(e);
+        }
+        return sources;
+    }
+
+    private <T> List<FetchedSource<T>> fetchAll(List<ScriptSource> scripts, SourceLoader<T> loader,
+                                                Consumer<T> discard) {
+        long timeoutMillis = Math.max(1, plugin.getConfig().getLong("fetch.source-timeout-ms", 30000));
+        List<FetchedSource<T>> sources = new ArrayList<>(scripts.size());
+        for (int i = 0; i < scripts.size(); i++) {
+            ScriptSource script = scripts.get(i);
+            int index = i;
+            FetchedSource<T> source = new FetchedSource<>(script.getLink());
+            throttled(script, timeoutMillis, sourceWorkers, source::setTask, () -> loader.load(script, index))
+                .whenComplete((value, error) -> {
+                    if (error != null) {
+                        source.fail(error);
+                    } else if (!source.complete(value)) {
+                        discard.accept(value);
+                    }
+                });
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, source::expire,
+                Math.max(1, (timeoutMillis + 49) / 50));
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    private static void deletePart(ScriptIngest.Result result) {
+        if (result != null && result.getFile() != null) {
+            result.getFile().delete();
+        }
+    }
+
+    /**
+     * Reads the part files one after another, separated by line breaks.
+     */
+    private static InputStream concat(List<File> files) {
+        Iterator<File> remaining = files.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private boolean separator;
+
+            @Override
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (separator) {
+                    separator = false;
+                    return new ByteArrayInputStream(new byte[] {'\n'});
+                }
+                separator = true;
+                try {
+                    return new FileInputStream(remaining.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@code request} on {@code executor} once one of the
+     * {@code fetch.per-host-limit} slots of the source's host is free. While
+     * it waits for a slot it only sits in the host's queue; a request that
+     * could not start within {@code waitMillis} fails without running.
+     *
+     * @param started receives the running task so it can be cancelled, or {@code null}
+     */
+    private <T> CompletableFuture<T> throttled(ScriptSource source, long waitMillis, ExecutorService executor,
+                                               Consumer<Future<?>> started, Callable<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + waitMillis * 1_000_000L;
+        String host = source.getHost();
+        HostSlots slots = host == null ? null : hostSlots.computeIfAbsent(host, h -> new HostSlots(perHostLimit));
+        Runnable start = () -> {
+            // Whoever claims it gives the slot back: the task once the request has really returned, even when
+            // cancel(true) could not interrupt its read, or done() for a task cancelled before it started
+            AtomicBoolean claimed = new AtomicBoolean();
+            FutureTask<Void> task = new FutureTask<Void>(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    if (System.nanoTime() - deadline > 0) {
+                        throw new SocketTimeoutException(host != null ? "Too many parallel requests to " + host
+                            : "Source timed out waiting for a worker");
+                    }
+                    result.complete(request.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    if (slots != null) {
+                        slots.release();
+                    }
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        result.completeExceptionally(new CancellationException("Source cancelled"));
+                    }
+                    if (claimed.compareAndSet(false, true) && slots != null) {
+                        slots.release();
+                    }
+                }
+            };
+            if (started != null) {
+                started.accept(task);
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.cancel(false);
+                result.completeExceptionally(e);
+            }
+        };
+        if (slots != null) {
+            slots.acquire(start);
+        } else {
+            start.run();
+        }
+        return result;
+    }
+
+    private long requestTimeout() {
+        return plugin.getConfig().getLong("timeouts.connect", 10000) + plugin.getConfig().getLong("timeouts.read", 10000);
+    }
+
+    /**
+     * Returns the download of {@code key} in flight, or starts {@code download}
+     * as a new one. The parsed lines are shared between callers, so they
+     * are handed out read-only.
+     */
+    private CompletableFuture<List<String>> shared(String key, Supplier<CompletableFuture<List<String>>> download) {
+        CompletableFuture<List<String>> created = new CompletableFuture<>();
+        CompletableFuture<List<String>> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+        download.get().whenComplete((lines, error) -> {
+            inFlight.remove(key, created);
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(Collections.unmodifiableList(lines));
+            }
+        });
+        return created;
+    }
+
+    private <T> void deliver(CompletableFuture<T> download, Callback<T> callback) {
+        download.whenComplete((result, error) -> {
+            if (error == null) {
+                runSync(() -> callback.onSuccess(result));
+            } else {
+                Exception failure = error instanceof Exception ? (Exception) error : new IOException(error);
+                runSync(() -> callback.onFailure(failure));
+            }
+        });
+    }
+
+    private List<String> download(ScriptSource source) throws IOException {
+        try (ScriptSource.Response response = open(source, null)) {
+            return parse(source, response);
+        }
+    }
+
+    private ScriptIngest.Result downloadScript(ScriptSource source, File target, ScriptIngest ingest)
+            throws IOException {
+        try (ScriptSource.Response response = open(source, null)) {
+            if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + response.getStatus());
+            }
+            try {
+                ScriptIngest.Result result = ingest.ingest(response.getBody(), target);
+                linesParsed.add(result.getLineCount());
+                return result;
+            } catch (ScriptIngest.InvalidScriptException e) {
+                throw e;
+            } catch (IOException e) {
+                recordFailure(source);
+                throw e;
+            }
+        }
+    }
+
+    private List<String> downloadCached(ScriptSource source) throws IOException {
+        if (source.getHost() == null) {
+            return download(source);
+        }
+        String link = source.getLink();
+        ContentCache.Entry cached = cache.lookup(link);
+        if (cached != null && cache.isFresh(cached)) {
+            List<String> lines = cache.read(cached);
+            if (lines != null) {
+                return lines;
+            }
+            // Evicted since the lookup: fetch it again
+            cached = null;
+        }
+
+        ScriptSource.Response response;
+        try {
+            response = open(source, cached);
+        } catch (IOException e) {
+            List<String> lines = cached != null ? cache.read(cached) : null;
+            if (lines == null) {
+                throw e;
+            }
+            plugin.getLogger().warning("Origin unreachable, using cached copy of " + link + ": " + e.getMessage());
+            return lines;
+        }
+
+        try (ScriptSource.Response body = response) {
+            int status = body.getStatus();
+            if (cached != null && status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                List<String> lines = cache.read(cached);
+                if (lines == null) {
+                    // The copy the origin confirmed was evicted meanwhile
+                    return download(source);
+                }
+                cache.revalidated(cached);
+                return lines;
+            }
+            if (cached != null && status >= 500) {
+                List<String> lines = cache.read(cached);
+                if (lines != null) {
+                    plugin.getLogger().warning("Origin returned HTTP " + status + ", using cached copy of " + link);
+                    return lines;
+                }
+            }
+
+            List<String> commands = parse(source, body);
+            cache.store(link, body.getEtag(), body.getLastModified(), commands);
+            return commands;
+        }
+    }
+
+    /**
+     * Opens {@code source}, consulting and updating {@link HostHealth} for
+     * network sources.
+     */
+    private ScriptSource.Response open(ScriptSource source, ContentCache.Entry cached) throws IOException {
+        int connectTimeout = plugin.getConfig().getInt("timeouts.connect", 10000);
+        int readTimeout = plugin.getConfig().getInt("timeouts.read", 10000);
+        String host = source.getHost();
+        if (host == null) {
+            return source.open(cached, connectTimeout, readTimeout);
+        }
+        if (!health.allowRequest(host)) {
+            throw new HostUnavailableException(host, health.retryAfter(host));
+        }
+
+        ScriptSource.Response response;
+        try {
+            response = source.open(cached, connectTimeout, readTimeout);
+        } catch (IOException | RuntimeException e) {
+            health.recordFailure(host);
+            throw e;
+        }
+        if (response.getStatus() >= 500) {
+            health.recordFailure(host);
+        } else {
+            health.recordSuccess(host);
+        }
+        return response;
+    }
+
+    private void recordFailure(ScriptSource source) {
+        if (source.getHost() != null) {
+            health.recordFailure(source.getHost());
+        }
+    }
+
+    private List<String> parse(ScriptSource source, ScriptSource.Response response) throws IOException {
+        if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP " + response.getStatus());
+        }
+
+        List<String> commands = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new LimitedInputStream(response.getBody(), maxResponseBytes), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    commands.add(line);
+                }
+            }
+        } catch (ScriptIngest.InvalidScriptException e) {
+            throw e;
+        } catch (IOException e) {
+            recordFailure(source);
+            throw e;
+        }
+        linesParsed.add(commands.size());
+        return commands;
+    }
+
+    private void runSync(Runnable task) {
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        try {
+            plugin.getServer().getScheduler().runTask(plugin, task);
+        } catch (IllegalStateException e) {
+            // Plugin got disabled between the check and the schedule call
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        sourceWorkers.shutdownNow();
+        try {
+            workers.awaitTermination(2, TimeUnit.SECONDS);
+            sourceWorkers.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The {@code fetch.per-host-limit} request slots of one host. Requests
+     * beyond the limit are queued and started as slots are given back.
+     * {@code free} goes below zero while more requests run than a lowered
+     * limit allows.
+     */
+    private static final class HostSlots {
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int limit;
+        private int free;
+
+        private HostSlots(int limit) {
+            this.limit = limit;
+            this.free = limit;
+        }
+
+        void acquire(Runnable start) {
+            synchronized (this) {
+                if (free <= 0) {
+                    waiting.addLast(start);
+                    return;
+                }
+                free--;
+            }
+            start.run();
+        }
+
+        void release() {
+            Runnable next;
+            synchronized (this) {
+                free++;
+                if (free <= 0 || (next = waiting.pollFirst()) == null) {
+                    return;
+                }
+                free--;
+            }
+            next.run();
+        }
+
+        /**
+         * Applies a new limit to the requests running and waiting now.
+         */
+        void resize(int limit) {
+            List<Runnable> started = new ArrayList<>();
+            synchronized (this) {
+                free += limit - this.limit;
+                this.limit = limit;
+                while (free > 0 && !waiting.isEmpty()) {
+                    free--;
+                    started.add(waiting.pollFirst());
+                }
+            }
+            started.forEach(Runnable::run);
+        }
+    }
+
+    private interface SourceLoader<T> {
+        T load(ScriptSource source, int index) throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Raised when one source of a multi-source fetch fails and failed
+     * sources are not skipped.
+     */
+    public static class SourceException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final String link;
+
+        public SourceException(String link, Throwable cause) {
+            super(link + ": " + cause.getMessage(), cause);
+            this.link = link;
+        }
+
+        public String getLink() {
+            return link;
+        }
+    }
+
+    /**
+     * Raised without touching the network while the circuit for a host is open.
+     */
+    public static class HostUnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final String host;
+        private final long retryAfterMillis;
+
+        public HostUnavailableException(String host, long retryAfterMillis) {
+            super("Host " + host + " is unavailable");
+            this.host = host;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.bin.shortcmd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a downloaded script into a file line by line, compiling it on the
+ * way: lines are trimmed, blanks and {@code #} comments are dropped, and the
+ * line count, SHA-256 hash and byte size of the canonical body are computed
+ * incrementally. Memory use is bounded by {@code inlineMaxLines}: small
+ * scripts are also kept as a list so they can be stored inline, larger ones
+ * only exist on disk, gzipped if compression is on. The distinct command
+ * labels are collected on the way (up to {@value #MAX_LABELS}) so unknown
+ * commands can be reported at save time.
+ */
+public final class ScriptIngest {
+    static final int MAX_LABELS = 256;
+
+    private final long maxBytes;
+    private final int maxLines;
+    private final int inlineMaxLines;
+    private final boolean compress;
+
+    public ScriptIngest(long maxBytes, int maxLines, int inlineMaxLines, boolean compress) {
+        this.maxBytes = maxBytes;
+        this.maxLines = maxLines;
+        this.inlineMaxLines = inlineMaxLines;
+        this.compress = compress;
+    }
+
+    /**
+     * A copy with a different inline threshold; {@code -1} always keeps the
+     * script on disk.
+     */
+    public ScriptIngest withInlineMaxLines(int inlineMaxLines) {
+        return new ScriptIngest(maxBytes, maxLines, inlineMaxLines, compress);
+    }
+
+    /**
+     * A copy that gzips the files it writes or not, e.g. off for part files
+     * that are read back as plain text.
+     */
+    public ScriptIngest withCompression(boolean compress) {
+        return new ScriptIngest(maxBytes, maxLines, inlineMaxLines, compress);
+    }
+
+    /**
+     * Reads {@code in} into {@code target}. Scripts that fit inline are returned
+     * with their lines and {@code target} is not created.
+     */
+    public Result ingest(InputStream in, File target) throws IOException {
+        File tmp = new File(target.getPath() + ".part");
+        File parent = tmp.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+
+        MessageDigest digest = Hashes.sha256();
+        List<String> lines = new ArrayList<>();
+        Set<String> labels = new LinkedHashSet<>();
+        int count = 0;
+        long bytes = 0;
+        boolean success = false;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new LimitedInputStream(in, maxBytes),
+                 StandardCharsets.UTF_8.newDecoder()
+                     .onMalformedInput(CodingErrorAction.REPORT)
+                     .onUnmappableCharacter(CodingErrorAction.REPORT)), 65536);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(open(tmp), StandardCharsets.UTF_8), 65536)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                if (++count > maxLines) {
+                    throw new InvalidScriptException("Script is longer than " + maxLines + " lines");
+                }
+
+                byte[] encoded = line.getBytes(StandardCharsets.UTF_8);
+                if (count > 1) {
+                    digest.update((byte) '\n');
+                    writer.write('\n');
+                    bytes++;
+                }
+                digest.update(encoded);
+                writer.write(line);
+                bytes += encoded.length;
+                if (labels.size() < MAX_LABELS) {
+                    addLabel(labels, line);
+                }
+
+                if (lines != null) {
+                    lines.add(line);
+                    if (lines.size() > inlineMaxLines) {
+                        lines = null;
+                    }
+                }
+            }
+            success = true;
+        } catch (CharacterCodingException e) {
+            throw new InvalidScriptException("Script is not valid UTF-8");
+        } finally {
+            if (!success) {
+                tmp.delete();
+            }
+        }
+
+        String hash = Hashes.hex(digest.digest());
+        if (lines != null) {
+            tmp.delete();
+            return new Result(lines, null, false, count, hash, bytes, labels);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return new Result(null, target, compress, count, hash, bytes, labels);
+    }
+
+    private OutputStream open(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        if (!compress) {
+            return out;
+        }
+        try {
+            return new GZIPOutputStream(out, 65536);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the label of a command line; directives and labels built from
+     * {@code ${variables}} are only known at run time.
+     */
+    private static void addLabel(Set<String> labels, String line) {
+        if (line.charAt(0) == '@') {
+            return;
+        }
+        int space = line.indexOf(' ');
+        String label = space < 0 ? line : line.substring(0, space);
+        if (!label.contains("${")) {
+            labels.add(label.toLowerCase(Locale.ENGLISH));
+        }
+    }
+
+    public static final class Result {
+        private final List<String> lines;
+        private final File file;
+        private final boolean compressed;
+        private final int lineCount;
+        private final String hash;
+        private final long bytes;
+        private final Set<String> labels;
+
+        private Result(List<String> lines, File file, boolean compressed, int lineCount, String hash, long bytes,
+                       Set<String> labels) {
+            this.lines = lines;
+            this.file = file;
+            this.compressed = compressed;
+            this.lineCount = lineCount;
+            this.hash = hash;
+            this.bytes = bytes;
+            this.labels = Collections.unmodifiableSet(labels);
+        }
+
+        /**
+         * The compiled lines, or {@code null} if the script was kept on disk.
+         */
+        public List<String> getLines() {
+            return lines;
+        }
+
+        /**
+         * The script file, or {@code null} if the script fits inline.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Whether the script file is gzipped.
+         */
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * The distinct lower-cased command labels, at most {@value ScriptIngest#MAX_LABELS}.
+         */
+        public Set<String> getLabels() {
+            return labels;
+        }
+    }
+
+    /**
+     * Raised when the script itself is rejected, as opposed to a transport error.
+     */
+    public static class InvalidScriptException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidScriptException(String message) {
+            super(message);
+        }
+    }
+}
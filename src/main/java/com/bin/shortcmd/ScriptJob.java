@@ -0,0 +1,201 @@
+package com.bin.shortcmd;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * A queued script waiting to be dispatched by {@link CommandDispatcher}.
+ * <p>
+ * With an {@link AsyncCommandLane.Lane}, lines the offload function turns
+ * into tasks run on that lane. A line that has to run on the main thread
+ * waits until the lane is idle, and the script completes only once it is.
+ */
+public class ScriptJob {
+    private final CommandSender sender;
+    private final Iterator<String> commands;
+    private final Consumer<String> executor;
+    private final IntConsumer onComplete;
+    private final long delayNanos;
+    private final AtomicInteger committed = new AtomicInteger();
+    private long nextDue;
+    private int executed;
+    private long mainThreadNanos;
+    private volatile boolean cancelled;
+    private Runnable onEnd;
+    private AsyncCommandLane.Lane lane;
+    private Function<String, Runnable> offload;
+    private String parked;
+
+    /**
+     * @param commands   lines to run, pulled one at a time
+     * @param executor   runs a single line on the main thread
+     * @param onComplete receives the number of executed lines once drained
+     * @param delayMillis minimum spacing between two lines of this script
+     */
+    public ScriptJob(CommandSender sender, Iterator<String> commands, Consumer<String> executor,
+                     IntConsumer onComplete, long delayMillis) {
+        this.sender = sender;
+        this.commands = commands;
+        this.executor = executor;
+        this.onComplete = onComplete;
+        this.delayNanos = Math.max(0, delayMillis) * 1_000_000L;
+        this.nextDue = System.nanoTime();
+    }
+
+    public CommandSender getSender() {
+        return sender;
+    }
+
+    public int getExecuted() {
+        return executed;
+    }
+
+    /**
+     * Lines that finished running, including async lines; may be read from
+     * any thread.
+     */
+    public int getCommitted() {
+        return committed.get();
+    }
+
+    /**
+     * Main-thread time spent running this script's lines so far.
+     */
+    public long getMainThreadNanos() {
+        return mainThreadNanos;
+    }
+
+    /**
+     * Stops the script before its next line; {@link CommandDispatcher} drops it
+     * on its next pass without calling the completion callback.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Sets a callback for when the job leaves the dispatcher, whether it
+     * completed, was cancelled or its sender left.
+     */
+    public void setOnEnd(Runnable onEnd) {
+        this.onEnd = onEnd;
+    }
+
+    /**
+     * Runs the lines {@code offload} returns a task for on {@code lane}
+     * instead of the main thread; {@code offload} returns {@code null} for
+     * lines that must stay on the main thread. It is called right after a
+     * line is pulled, so it may look at the state of the command source.
+     */
+    public void setLane(AsyncCommandLane.Lane lane, Function<String, Runnable> offload) {
+        this.lane = lane;
+        this.offload = offload;
+    }
+
+    boolean isSenderGone() {
+        return sender instanceof Player && !((Player) sender).isOnline();
+    }
+
+    boolean isDue(long now) {
+        if (now - nextDue < 0) {
+            return false;
+        }
+        if (lane != null && !lane.isIdle()) {
+            // A held-back main-thread line and the end of the script wait for the lane
+            if (parked != null || lane.isFull()) {
+                return false;
+            }
+        } else if (parked != null) {
+            return true;
+        }
+        if (commands instanceof Deferred && !((Deferred) commands).isReady()) {
+            return false;
+        }
+        return lane == null || lane.isIdle() || commands.hasNext();
+    }
+
+    boolean hasNext() {
+        return parked != null || commands.hasNext() || (lane != null && !lane.isIdle());
+    }
+
+    void dispatchNext(long now) {
+        String line = parked;
+        parked = null;
+        if (line == null) {
+            line = commands.next();
+            if (lane != null) {
+                Runnable task = offload.apply(line);
+                if (task != null) {
+                    executed++;
+                    lane.submit(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            committed.incrementAndGet();
+                        }
+                    });
+                    mainThreadNanos += System.nanoTime() - now;
+                    return;
+                }
+                if (!lane.isIdle()) {
+                    parked = line;
+                    return;
+                }
+            }
+        }
+        executed++;
+        nextDue = now + delayNanos;
+        try {
+            executor.accept(line);
+        } finally {
+            committed.incrementAndGet();
+            mainThreadNanos += System.nanoTime() - now;
+        }
+    }
+
+    void complete() {
+        onComplete.accept(executed);
+    }
+
+    void end() {
+        if (onEnd != null) {
+            onEnd.run();
+        }
+    }
+
+    /**
+     * Releases the command source, e.g. an open script file, and drops the
+     * async lines that have not started yet.
+     */
+    void close() {
+        if (lane != null) {
+            lane.cancel();
+        }
+        if (commands instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) commands).close();
+            } catch (Exception ignored) {
+                // Best effort, the job is finished either way
+            }
+        }
+    }
+
+    /**
+     * A command source whose next line may still be on its way. The job is
+     * not due until {@link #isReady()} returns {@code true}, after which
+     * {@code hasNext()} answers without waiting.
+     */
+    public interface Deferred {
+        boolean isReady();
+    }
+}
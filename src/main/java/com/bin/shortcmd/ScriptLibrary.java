@@ -0,0 +1,238 @@
+package com.bin.shortcmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled view of the saved scripts in {@link ScriptStorage}. Scripts are
+ * compiled once, either at save time or the first time they are run, and kept
+ * in memory until the blocklist changes or the entry is deleted. The bodies
+ * held this way are limited to {@code savecmd.compiled-cache-mb}; past that
+ * the least recently used scripts are dropped and compiled again when they
+ * are next run. Runs in progress keep their own reference.
+ * <p>
+ * Scripts longer than {@code savecmd.inline-max-lines} are not kept in the
+ * storage records; their compiled body lives in {@code scripts/} and only
+ * the file name is stored. Those files are named after the hash of their
+ * body, so names saved with the same script share one file, and files no
+ * name refers to any more are only removed by {@link #collectGarbage()}. It
+ * also removes what downloads cut short by a crash or a disable left of
+ * their {@code incoming-} files.
+ */
+public class ScriptLibrary {
+    private static final Pattern CONTENT_FILE = Pattern.compile("[0-9a-f]{64}\\.(txt|gz)");
+    private static final String INGEST_PREFIX = "incoming-";
+
+    private final ShortCmdPlugin plugin;
+    private final File directory;
+    private final Map<String, CompiledScript> compiled = new LinkedHashMap<>(16, 0.75f, true);
+    private long compiledBytes;
+    private final Set<String> ingesting = ConcurrentHashMap.newKeySet();
+
+    public ScriptLibrary(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "scripts");
+    }
+
+    /**
+     * Returns the compiled script stored under {@code name}, or {@code null}.
+     */
+    public CompiledScript get(String name) {
+        CompiledScript script = compiled.get(name);
+        if (script != null) {
+            return script;
+        }
+
+        StoredScript stored = plugin.getStorage().getScript(name);
+        if (stored == null) {
+            return null;
+        }
+        if (stored.isFileBacked()) {
+            script = CompiledScript.ofFile(new File(directory, stored.getFile()), stored.getLineCount(),
+                stored.getHash(), stored.getBytes(), plugin.getBlocklist());
+        } else {
+            script = CompiledScript.load(stored.getLines(), stored.getHash(), stored.getBytes(),
+                plugin.getBlocklist());
+        }
+        cache(name, script);
+        return script;
+    }
+
+    private void cache(String name, CompiledScript script) {
+        compiledBytes += weight(script) - weight(compiled.put(name, script));
+        long maxBytes = Math.max(0, plugin.getConfig().getLong("savecmd.compiled-cache-mb", 32)) * 1024 * 1024;
+        Iterator<CompiledScript> eldest = compiled.values().iterator();
+        while (compiledBytes > maxBytes && compiled.size() > 1) {
+            compiledBytes -= weight(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private void uncache(String name) {
+        compiledBytes -= weight(compiled.remove(name));
+    }
+
+    /**
+     * The memory a cached script holds on to: file-backed scripts only keep
+     * their file name, the others all of their commands.
+     */
+    private static long weight(CompiledScript script) {
+        return script == null || script.isFileBacked() ? 0 : script.getBytes();
+    }
+
+    /**
+     * A new file for a large script to be streamed into before it is stored
+     * under its hash. Each download gets its own, so two saves of the same
+     * name at once do not write into each other.
+     */
+    public File newIngestFile() {
+        String id = INGEST_PREFIX + UUID.randomUUID();
+        ingesting.add(id);
+        return new File(directory, id + ".txt");
+    }
+
+    /**
+     * Marks the save streaming into {@code file} as finished, so
+     * {@link #collectGarbage()} may delete whatever is left of it.
+     */
+    public void finishIngest(File file) {
+        ingesting.remove(ingestId(file.getName()));
+    }
+
+    /**
+     * The {@code incoming-<uuid>} part shared by an ingest file and its
+     * {@code .part} and per-source files.
+     */
+    private static String ingestId(String fileName) {
+        int dot = fileName.indexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+
+    /**
+     * The per-name file scripts saved before bodies were stored by hash run from.
+     */
+    private File namedFile(String name) {
+        return new File(directory, Hashes.sha256Hex(name).substring(0, 32) + ".txt");
+    }
+
+    public ScriptIngest newIngest() {
+        return new ScriptIngest(
+            Math.max(1, plugin.getConfig().getLong("savecmd.max-bytes", 67108864)),
+            Math.max(1, plugin.getConfig().getInt("savecmd.max-lines", 1000000)),
+            Math.max(0, plugin.getConfig().getInt("savecmd.inline-max-lines", 1000)),
+            plugin.getConfig().getLong("storage.compress-min-bytes", 4096) > 0);
+    }
+
+    /**
+     * Saves the result of {@link ScriptIngest#ingest} under {@code name}.
+     */
+    public void put(String name, ScriptIngest.Result result) {
+        if (result.getLines() != null) {
+            put(name, CompiledScript.load(result.getLines(), result.getHash(), result.getBytes(),
+                plugin.getBlocklist()));
+        } else {
+            put(name, CompiledScript.ofFile(store(result), result.getLineCount(), result.getHash(),
+                result.getBytes(), plugin.getBlocklist()));
+        }
+    }
+
+    public void put(String name, CompiledScript script) {
+        cache(name, script);
+        if (script.isFileBacked()) {
+            plugin.getStorage().putScript(name, StoredScript.ofFile(script.getFile().getName(), script.size(),
+                script.getHash(), script.getBytes()));
+        } else {
+            plugin.getStorage().putScript(name, new StoredScript(script.getCommands(), script.getHash(),
+                script.getBytes()));
+        }
+        deleteNamedFile(name, script);
+    }
+
+    public void remove(String name) {
+        uncache(name);
+        plugin.getStorage().removeScript(name);
+        deleteNamedFile(name, null);
+    }
+
+    /**
+     * Moves a streamed script file to the name of its hash, or drops it if
+     * that file already exists.
+     */
+    private File store(ScriptIngest.Result result) {
+        File file = new File(directory, result.getHash() + (result.isCompressed() ? ".gz" : ".txt"));
+        try {
+            if (file.isFile()) {
+                Files.delete(result.getFile().toPath());
+            } else {
+                Files.move(result.getFile().toPath(), file.toPath());
+            }
+            return file;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not store " + result.getFile() + " as " + file.getName(), e);
+            return result.getFile();
+        }
+    }
+
+    /**
+     * Deletes the file streamed for {@code name}, which scripts saved before
+     * bodies were stored by hash also run from, unless {@code script} uses it.
+     */
+    private void deleteNamedFile(String name, CompiledScript script) {
+        File file = namedFile(name);
+        if (script != null && file.equals(script.getFile())) {
+            return;
+        }
+        if (file.isFile() && !file.delete()) {
+            plugin.getLogger().warning("Could not delete " + file);
+        }
+    }
+
+    /**
+     * Drops the script bodies no saved name refers to any more, in storage
+     * and in {@code scripts/}.
+     */
+    public ScriptStorage.Reclaimed collectGarbage() {
+        ScriptStorage storage = plugin.getStorage();
+        ScriptStorage.Reclaimed reclaimed = storage.collectGarbage();
+
+        Set<String> used = new HashSet<>();
+        for (String name : storage.getScriptNames()) {
+            StoredScript script = storage.getScript(name);
+            if (script != null && script.isFileBacked()) {
+                used.add(script.getFile());
+            }
+        }
+        File[] files = directory.listFiles((dir, file) -> CONTENT_FILE.matcher(file).matches()
+            ? !used.contains(file) : file.startsWith(INGEST_PREFIX) && !ingesting.contains(ingestId(file)));
+        if (files == null) {
+            return reclaimed;
+        }
+        int count = 0;
+        long bytes = 0;
+        for (File file : files) {
+            long length = file.length();
+            if (file.delete()) {
+                count++;
+                bytes += length;
+            }
+        }
+        return reclaimed.plus(new ScriptStorage.Reclaimed(count, bytes));
+    }
+
+    /**
+     * Recomputes the blocklist verdicts of every compiled script.
+     */
+    public void recompile(Blocklist blocklist) {
+        compiled.replaceAll((name, script) -> script.recompile(blocklist));
+    }
+}
@@ -0,0 +1,158 @@
+package com.bin.shortcmd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable file of script bodies, written in one go when storage is
+ * compacted and read through a read-only memory mapping. Bodies stay in the
+ * page cache rather than on the heap, and are decoded only when a script is
+ * loaded to run. Each body is the canonical script text: its lines joined
+ * with {@code \n} in UTF-8, stored either as is or deflated.
+ */
+final class ScriptPack {
+    /** Largest pack that fits a single mapping. */
+    static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private final String name;
+    private final ByteBuffer mapped;
+
+    private ScriptPack(String name, ByteBuffer mapped) {
+        this.name = name;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Maps {@code file}. The mapping outlives the channel, so no file handle
+     * stays open.
+     */
+    static ScriptPack open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > MAX_BYTES) {
+                throw new IOException("Script pack " + file + " is larger than 2 GB");
+            }
+            return new ScriptPack(file.getName(), channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Writes the canonical body of {@code lines}, deflated if {@code compress},
+     * and returns the number of bytes written.
+     */
+    static long writeBody(OutputStream out, List<String> lines, boolean compress) throws IOException {
+        if (!compress) {
+            return writeBody(out, lines);
+        }
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try (DeflaterOutputStream body = new DeflaterOutputStream(deflated)) {
+            writeBody(body, lines);
+        }
+        deflated.writeTo(out);
+        return deflated.size();
+    }
+
+    private static long writeBody(OutputStream out, List<String> lines) throws IOException {
+        long length = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                out.write('\n');
+                length++;
+            }
+            byte[] encoded = lines.get(i).getBytes(StandardCharsets.UTF_8);
+            out.write(encoded);
+            length += encoded.length;
+        }
+        return length;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Decodes the body at {@code offset}; {@code bytes} is its canonical
+     * length, which a deflated body must inflate to.
+     */
+    List<String> readLines(long offset, long length, boolean compressed, long bytes) throws IOException {
+        ByteBuffer stored = slice(offset, length);
+        String body = StandardCharsets.UTF_8.decode(compressed ? inflate(stored, bytes) : stored).toString();
+        if (body.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = body.indexOf('\n', start)) >= 0) {
+            lines.add(body.substring(start, end));
+            start = end + 1;
+        }
+        lines.add(body.substring(start));
+        return lines;
+    }
+
+    private ByteBuffer inflate(ByteBuffer stored, long bytes) throws IOException {
+        if (bytes > MAX_BYTES) {
+            throw new IOException("Deflated body in " + name + " is too large");
+        }
+        byte[] input = new byte[stored.remaining()];
+        stored.get(input);
+        byte[] output = new byte[(int) bytes];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int inflated = 0;
+            while (inflated < output.length && !inflater.finished()) {
+                int count = inflater.inflate(output, inflated, output.length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != output.length) {
+                throw new IOException("Deflated body in " + name + " is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Deflated body in " + name + " is damaged", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    /**
+     * Copies a body as stored, e.g. into the next pack during compaction.
+     */
+    void copyTo(long offset, long length, OutputStream out) throws IOException {
+        ByteBuffer body = slice(offset, length);
+        byte[] chunk = new byte[(int) Math.min(65536, length)];
+        while (body.hasRemaining()) {
+            int count = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, count);
+            out.write(chunk, 0, count);
+        }
+    }
+
+    private ByteBuffer slice(long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > mapped.capacity()) {
+            throw new IOException("Body at " + offset + "+" + length + " is outside " + name);
+        }
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) offset);
+        view.limit((int) (offset + length));
+        return view.slice();
+    }
+}
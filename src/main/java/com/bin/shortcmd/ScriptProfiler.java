@@ -0,0 +1,231 @@
+package com.bin.shortcmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Times every line of one script run. Each call of the wrapped executor is
+ * measured with {@link System#nanoTime()}; the bytes allocated by the main
+ * thread during the call are recorded too when the JVM supports per-thread
+ * allocation counters. A line that takes longer than a server tick (50 ms)
+ * records how far it overran the tick.
+ * <p>
+ * Samples are only touched from the main thread; the report may be written
+ * from another thread once the script has finished.
+ */
+public class ScriptProfiler {
+    static final long TICK_NANOS = 50_000_000L;
+
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+    private final String name;
+    private final long thresholdNanos;
+    private final List<Sample> samples = new ArrayList<>();
+    private long totalNanos;
+
+    public ScriptProfiler(String name, long thresholdNanos) {
+        this.name = name;
+        this.thresholdNanos = thresholdNanos;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+                if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                    return counter;
+                }
+            }
+        } catch (LinkageError | RuntimeException ignored) {
+            // Not a HotSpot-style JVM, allocations are not reported
+        }
+        return null;
+    }
+
+    /**
+     * Whether samples carry allocation deltas on this JVM.
+     */
+    public static boolean isAllocationSupported() {
+        return ALLOCATIONS != null;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Returns an executor that runs {@code executor} and records a sample for every line.
+     */
+    public Consumer<String> wrap(Consumer<String> executor) {
+        return line -> {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            try {
+                executor.accept(line);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                long after = allocated >= 0 ? allocatedBytes() : -1;
+                record(line, nanos, after >= 0 ? after - allocated : -1);
+            }
+        };
+    }
+
+    void record(String command, long nanos, long allocatedBytes) {
+        samples.add(new Sample(samples.size() + 1, command, nanos, allocatedBytes));
+        totalNanos += nanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return samples.size();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * The {@code limit} slowest lines, slowest first.
+     */
+    public List<Sample> getSlowest(int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<Sample> top = new PriorityQueue<>(Comparator.comparingLong(Sample::getNanos));
+        for (Sample sample : samples) {
+            if (top.size() < limit) {
+                top.add(sample);
+            } else if (sample.getNanos() > top.peek().getNanos()) {
+                top.poll();
+                top.add(sample);
+            }
+        }
+        List<Sample> slowest = new ArrayList<>(top);
+        slowest.sort(Comparator.comparingLong(Sample::getNanos).reversed());
+        return slowest;
+    }
+
+    /**
+     * Lines that took longer than the threshold, in script order.
+     */
+    public List<Sample> getOverThreshold() {
+        List<Sample> slow = new ArrayList<>();
+        for (Sample sample : samples) {
+            if (sample.getNanos() > thresholdNanos) {
+                slow.add(sample);
+            }
+        }
+        return slow;
+    }
+
+    /**
+     * Number of lines that alone took longer than a server tick.
+     */
+    public int getTickOverruns() {
+        int overruns = 0;
+        for (Sample sample : samples) {
+            if (sample.getTickOverrunNanos() > 0) {
+                overruns++;
+            }
+        }
+        return overruns;
+    }
+
+    /**
+     * Writes every sample to {@code file} as CSV, replacing it atomically.
+     */
+    public void writeCsv(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Failed to create " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            out.write("line,command,nanos,allocated_bytes,tick_overrun_nanos,over_threshold\n");
+            for (Sample sample : samples) {
+                out.write(Integer.toString(sample.getLine()));
+                out.write(',');
+                out.write(csv(sample.getCommand()));
+                out.write(',');
+                out.write(Long.toString(sample.getNanos()));
+                out.write(',');
+                out.write(sample.getAllocatedBytes() >= 0 ? Long.toString(sample.getAllocatedBytes()) : "");
+                out.write(',');
+                out.write(Long.toString(sample.getTickOverrunNanos()));
+                out.write(',');
+                out.write(sample.getNanos() > thresholdNanos ? "true" : "false");
+                out.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String csv(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    public static final class Sample {
+        private final int line;
+        private final String command;
+        private final long nanos;
+        private final long allocatedBytes;
+
+        private Sample(int line, String command, long nanos, long allocatedBytes) {
+            this.line = line;
+            this.command = command;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * 1-based position among the executed lines.
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Bytes allocated by the main thread while the line ran, or {@code -1} if unknown.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getTickOverrunNanos() {
+            return Math.max(0, nanos - TICK_NANOS);
+        }
+    }
+}
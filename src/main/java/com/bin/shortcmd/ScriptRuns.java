@@ -0,0 +1,265 @@
+package com.bin.shortcmd;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Scripts that were triggered and have not finished yet, from the first
+ * download until their last line ran. Each run gets a short id for
+ * {@code /shortcmd jobs} and {@code /shortcmd cancel}; ids continue after the
+ * ones kept in {@link ScriptCheckpoints}, so they also name resumable runs.
+ * <p>
+ * Runs of the same saved script or URL share a key. While a run is active,
+ * another trigger of its key is handled by {@code jobs.duplicate-policy}:
+ * {@code queue} starts it once the active run ends, {@code reject} refuses it
+ * and {@code merge} attaches the sender to the active run instead of running
+ * the script twice. All methods must be called from the main thread.
+ */
+public class ScriptRuns {
+    private final ShortCmdPlugin plugin;
+    private final Map<Integer, Run> runs = new LinkedHashMap<>();
+    private final Map<String, Deque<Run>> byKey = new HashMap<>();
+    private final Metrics.Counter rejected;
+    private final Metrics.Counter merged;
+    private final Metrics.Counter queued;
+    private Policy policy;
+    private int nextId;
+
+    public ScriptRuns(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.nextId = plugin.getCheckpoints().getLastId();
+        this.rejected = plugin.getMetrics().counter("shortcmd_duplicate_runs_total", "Runs of an already active script",
+            "policy", "reject");
+        this.merged = plugin.getMetrics().counter("shortcmd_duplicate_runs_total", "Runs of an already active script",
+            "policy", "merge");
+        this.queued = plugin.getMetrics().counter("shortcmd_duplicate_runs_total", "Runs of an already active script",
+            "policy", "queue");
+        reload();
+    }
+
+    public void reload() {
+        try {
+            policy = Policy.valueOf(plugin.getConfig().getString("jobs.duplicate-policy", "queue")
+                .trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Unknown jobs.duplicate-policy, using queue");
+            policy = Policy.QUEUE;
+        }
+    }
+
+    /**
+     * Starts a run of {@code key} by passing it to {@code body}, which must
+     * {@link Run#attach} the dispatched job or {@link Run#finish} the run if it
+     * fails before that. Returns {@code null} if the run was rejected, the
+     * active run if the trigger was merged into it, or the new run, which is
+     * {@link Run#isWaiting() waiting} if it was queued.
+     */
+    public Run start(String key, String label, CommandSender sender, Consumer<Run> body) {
+        Deque<Run> active = byKey.get(key);
+        if (active != null) {
+            switch (policy) {
+                case REJECT:
+                    rejected.increment();
+                    return null;
+                case MERGE:
+                    merged.increment();
+                    return active.peekFirst();
+                default:
+                    queued.increment();
+                    break;
+            }
+        }
+
+        Run run = new Run(++nextId, key, label, sender, body);
+        runs.put(run.id, run);
+        if (active == null) {
+            active = new ArrayDeque<>();
+            byKey.put(key, active);
+        }
+        active.addLast(run);
+        if (active.size() == 1) {
+            run.begin();
+        }
+        return run;
+    }
+
+    public boolean isActive(String key) {
+        return byKey.containsKey(key);
+    }
+
+    public Run get(int id) {
+        return runs.get(id);
+    }
+
+    public Collection<Run> getRuns() {
+        return Collections.unmodifiableCollection(new ArrayList<>(runs.values()));
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    private void ended(Run run) {
+        runs.remove(run.id);
+        Deque<Run> active = byKey.get(run.key);
+        if (active == null) {
+            return;
+        }
+        boolean wasHead = active.peekFirst() == run;
+        active.remove(run);
+        if (active.isEmpty()) {
+            byKey.remove(run.key);
+        } else if (wasHead) {
+            active.peekFirst().begin();
+        }
+    }
+
+    public enum Policy {
+        QUEUE,
+        REJECT,
+        MERGE
+    }
+
+    /**
+     * One triggered script.
+     */
+    public final class Run {
+        private final int id;
+        private final String key;
+        private final String label;
+        private final CommandSender sender;
+        private final Consumer<Run> body;
+        private final List<Runnable> onEnd = new ArrayList<>(1);
+        private final long createdAt = System.currentTimeMillis();
+        private boolean started;
+        private boolean cancelled;
+        private boolean ended;
+        private ScriptJob job;
+        private int total;
+
+        private Run(int id, String key, String label, CommandSender sender, Consumer<Run> body) {
+            this.id = id;
+            this.key = key;
+            this.label = label;
+            this.sender = sender;
+            this.body = body;
+        }
+
+        private void begin() {
+            started = true;
+            try {
+                body.accept(this);
+            } catch (RuntimeException e) {
+                finish();
+                throw e;
+            }
+        }
+
+        /**
+         * Hands the run over to its dispatched job; the run ends with the job.
+         */
+        public void attach(ScriptJob job) {
+            this.job = job;
+            job.setOnEnd(this::finish);
+            if (cancelled) {
+                job.cancel();
+            }
+        }
+
+        /**
+         * Ends the run and starts the next one queued under the same key.
+         * Calling it again has no effect.
+         */
+        public void finish() {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            try {
+                for (Runnable callback : onEnd) {
+                    callback.run();
+                }
+            } finally {
+                ended(this);
+            }
+        }
+
+        /**
+         * Stops the run: a waiting run is dropped, a running script stops
+         * before its next line, and a run still downloading stops once its
+         * download is done.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (!started) {
+                finish();
+            } else if (job != null) {
+                job.cancel();
+            }
+        }
+
+        /**
+         * Adds a callback for when the run ends, successfully or not.
+         */
+        public void onEnd(Runnable callback) {
+            if (ended) {
+                callback.run();
+            } else {
+                onEnd.add(callback);
+            }
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public CommandSender getSender() {
+            return sender;
+        }
+
+        public boolean isWaiting() {
+            return !started;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Lines executed so far, or {@code -1} while the script is still downloading.
+         */
+        public int getExecuted() {
+            return job != null ? job.getExecuted() : -1;
+        }
+
+        /**
+         * Expected number of lines, or {@code 0} if unknown.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        public void setTotal(int total) {
+            this.total = total;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
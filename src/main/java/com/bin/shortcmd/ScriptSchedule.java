@@ -0,0 +1,149 @@
+package com.bin.shortcmd;
+
+import java.util.Locale;
+
+/**
+ * When a saved link or script runs on its own: either {@code every <duration>}
+ * (e.g. {@code every 5m}) or {@code cron <5 fields>}, together with the
+ * policies for runs that were missed and for runs that would overlap the
+ * previous one, and the time of the last run.
+ */
+public final class ScriptSchedule {
+    private final String spec;
+    private final long intervalMillis;
+    private final CronExpression cron;
+    private final Missed missed;
+    private final Overlap overlap;
+    private final long lastRun;
+
+    private ScriptSchedule(String spec, long intervalMillis, CronExpression cron, Missed missed, Overlap overlap,
+                           long lastRun) {
+        this.spec = spec;
+        this.intervalMillis = intervalMillis;
+        this.cron = cron;
+        this.missed = missed;
+        this.overlap = overlap;
+        this.lastRun = lastRun;
+    }
+
+    /**
+     * Parses {@code every <duration>} or {@code cron <expression>}.
+     *
+     * @throws IllegalArgumentException if the spec is invalid
+     */
+    public static ScriptSchedule parse(String spec, Missed missed, Overlap overlap, long lastRun) {
+        String trimmed = spec.trim();
+        int space = trimmed.indexOf(' ');
+        String kind = space > 0 ? trimmed.substring(0, space).toLowerCase(Locale.ROOT) : trimmed;
+        String argument = space > 0 ? trimmed.substring(space + 1).trim() : "";
+        switch (kind) {
+            case "every":
+                long interval = parseDuration(argument);
+                return new ScriptSchedule("every " + argument, interval, null, missed, overlap, lastRun);
+            case "cron":
+                CronExpression cron = CronExpression.parse(argument);
+                return new ScriptSchedule("cron " + cron, 0, cron, missed, overlap, lastRun);
+            default:
+                throw new IllegalArgumentException("Expected 'every <duration>' or 'cron <expression>': " + spec);
+        }
+    }
+
+    /**
+     * Parses durations such as {@code 30s}, {@code 5m}, {@code 2h} or {@code 1d};
+     * a bare number is seconds.
+     */
+    static long parseDuration(String value) {
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1000L;
+        if (!text.isEmpty()) {
+            switch (text.charAt(text.length() - 1)) {
+                case 's':
+                    text = text.substring(0, text.length() - 1);
+                    break;
+                case 'm':
+                    unit = 60_000L;
+                    text = text.substring(0, text.length() - 1);
+                    break;
+                case 'h':
+                    unit = 3_600_000L;
+                    text = text.substring(0, text.length() - 1);
+                    break;
+                case 'd':
+                    unit = 86_400_000L;
+                    text = text.substring(0, text.length() - 1);
+                    break;
+                default:
+                    break;
+            }
+        }
+        try {
+            long amount = Long.parseLong(text);
+            if (amount < 1 || amount > Long.MAX_VALUE / unit) {
+                throw new IllegalArgumentException("Interval out of range: " + value);
+            }
+            return amount * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid interval: " + value);
+        }
+    }
+
+    /**
+     * The first run time strictly after {@code millis}.
+     */
+    public long nextRun(long millis) {
+        return cron != null ? cron.nextAfter(millis) : millis + intervalMillis;
+    }
+
+    public ScriptSchedule withLastRun(long lastRun) {
+        return new ScriptSchedule(spec, intervalMillis, cron, missed, overlap, lastRun);
+    }
+
+    public String getSpec() {
+        return spec;
+    }
+
+    public Missed getMissed() {
+        return missed;
+    }
+
+    public Overlap getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Time of the last run in epoch milliseconds, or {@code 0} if it never ran.
+     */
+    public long getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * What to do with runs that fell due while the server was down or stalled.
+     */
+    public enum Missed {
+        /** Wait for the next regular run. */
+        SKIP,
+        /** Run once as soon as possible, then continue regularly. */
+        RUN;
+
+        public static Missed of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * What to do when a run falls due while the previous one is still going.
+     */
+    public enum Overlap {
+        /** Drop the new run. */
+        SKIP,
+        /** Start the new run once the previous one finishes; at most one waits. */
+        QUEUE,
+        /** Start the new run alongside the previous one. */
+        PARALLEL;
+
+        public static Overlap of(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+}
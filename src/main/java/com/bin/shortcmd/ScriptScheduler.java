@@ -0,0 +1,262 @@
+package com.bin.shortcmd;
+
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+
+/**
+ * Runs saved links and scripts on their {@link ScriptSchedule}s.
+ * <p>
+ * Schedules sit in a hashed timing wheel of one-second slots that is advanced
+ * by a single repeating main-thread task. Each advance only looks at the
+ * slots whose second has passed; an entry due more than a full turn ahead
+ * carries the number of turns still to wait. Scheduling, cancelling and
+ * firing are O(1) regardless of how many schedules exist. Due scripts are
+ * started through the normal dispatch path.
+ */
+public class ScriptScheduler implements Runnable {
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final long SLOT_MILLIS = 1000L;
+
+    private final ShortCmdPlugin plugin;
+    private final Entry[] wheel = new Entry[WHEEL_SIZE];
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Metrics.Counter fired;
+    private final Metrics.Counter skipped;
+    private Runner runner;
+    private BukkitTask task;
+    private long currentSlot;
+
+    public ScriptScheduler(ShortCmdPlugin plugin) {
+        this.plugin = plugin;
+        this.fired = plugin.getMetrics().counter("shortcmd_schedule_runs_total", "Scheduled runs",
+            "result", "started");
+        this.skipped = plugin.getMetrics().counter("shortcmd_schedule_runs_total", "Scheduled runs",
+            "result", "skipped");
+    }
+
+    /**
+     * Loads the stored schedules and starts the wheel. Runs that were missed
+     * while the server was down are handled by each schedule's policy.
+     */
+    public void start(Runner runner) {
+        this.runner = runner;
+        long now = System.currentTimeMillis();
+        currentSlot = now / SLOT_MILLIS;
+        ScriptStorage storage = plugin.getStorage();
+        for (String name : storage.getScheduleNames()) {
+            ScriptSchedule schedule = storage.getSchedule(name);
+            if (schedule != null) {
+                Entry entry = new Entry(name, schedule);
+                entries.put(name, entry);
+                long due = schedule.getLastRun() > 0 ? schedule.nextRun(schedule.getLastRun()) : schedule.nextRun(now);
+                if (due <= now) {
+                    due = schedule.getMissed() == ScriptSchedule.Missed.RUN ? now : schedule.nextRun(now);
+                }
+                insert(entry, due);
+            }
+        }
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this, 20L, 20L);
+    }
+
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Stores {@code schedule} for {@code name}, replacing an existing one.
+     * Must be called from the main thread.
+     */
+    public void schedule(String name, ScriptSchedule schedule) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry(name, schedule);
+            entries.put(name, entry);
+        } else {
+            unlink(entry);
+            entry.schedule = schedule;
+        }
+        plugin.getStorage().putSchedule(name, schedule);
+        insert(entry, schedule.nextRun(System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes the schedule of {@code name}; runs already started continue.
+     * Must be called from the main thread.
+     */
+    public boolean unschedule(String name) {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        entry.cancelled = true;
+        plugin.getStorage().removeSchedule(name);
+        return true;
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(entries.keySet()));
+    }
+
+    public ScriptSchedule getSchedule(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.schedule : null;
+    }
+
+    /**
+     * The next run of {@code name} in epoch milliseconds, or {@code 0} if unknown.
+     */
+    public long getNextRun(String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.due : 0;
+    }
+
+    @Override
+    public void run() {
+        long nowSlot = System.currentTimeMillis() / SLOT_MILLIS;
+        List<Entry> due = new ArrayList<>();
+        while (currentSlot < nowSlot) {
+            currentSlot++;
+            Entry entry = wheel[(int) (currentSlot & WHEEL_MASK)];
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.rounds > 0) {
+                    entry.rounds--;
+                } else {
+                    unlink(entry);
+                    due.add(entry);
+                }
+                entry = next;
+            }
+        }
+        for (Entry entry : due) {
+            fire(entry);
+        }
+    }
+
+    private void fire(Entry entry) {
+        if (entry.cancelled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.running > 0 && entry.schedule.getOverlap() != ScriptSchedule.Overlap.PARALLEL) {
+            if (entry.schedule.getOverlap() == ScriptSchedule.Overlap.QUEUE) {
+                entry.pending = true;
+            } else {
+                skipped.increment();
+            }
+        } else {
+            launch(entry, now);
+        }
+        if (entry.cancelled) {
+            return;
+        }
+        long next = entry.schedule.nextRun(entry.due);
+        if (next <= now) {
+            next = entry.schedule.nextRun(now);
+        }
+        insert(entry, next);
+    }
+
+    private void launch(Entry entry, long now) {
+        entry.running++;
+        entry.schedule = entry.schedule.withLastRun(now);
+        plugin.getStorage().putSchedule(entry.name, entry.schedule);
+        fired.increment();
+        boolean started;
+        try {
+            started = runner.run(entry.name, () -> finished(entry));
+        } catch (RuntimeException e) {
+            entry.running--;
+            plugin.getLogger().log(Level.WARNING, "Scheduled run of " + entry.name + " failed", e);
+            return;
+        }
+        if (!started) {
+            entry.running--;
+            plugin.getLogger().warning("Scheduled script " + entry.name + " no longer exists, removing its schedule");
+            unschedule(entry.name);
+        }
+    }
+
+    private void finished(Entry entry) {
+        entry.running--;
+        if (entry.pending && !entry.cancelled && task != null) {
+            entry.pending = false;
+            launch(entry, System.currentTimeMillis());
+        }
+    }
+
+    private void insert(Entry entry, long due) {
+        entry.due = due;
+        long slot = Math.max(due / SLOT_MILLIS, currentSlot + 1);
+        long ticks = slot - currentSlot;
+        entry.rounds = (ticks - 1) / WHEEL_SIZE;
+        int index = (int) (slot & WHEEL_MASK);
+        entry.slot = index;
+        entry.prev = null;
+        entry.next = wheel[index];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        wheel[index] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.slot < 0) {
+            return;
+        }
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            wheel[entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.slot = -1;
+    }
+
+    /**
+     * Starts a stored link or script through the normal dispatch path.
+     */
+    public interface Runner {
+        /**
+         * Returns {@code false} if {@code name} no longer exists. Otherwise
+         * {@code onFinish} must be called on the main thread once the run is
+         * over, whether it succeeded or not.
+         */
+        boolean run(String name, Runnable onFinish);
+    }
+
+    private static final class Entry {
+        private final String name;
+        private ScriptSchedule schedule;
+        private long due;
+        private long rounds;
+        private int slot = -1;
+        private Entry prev;
+        private Entry next;
+        private int running;
+        private boolean pending;
+        private boolean cancelled;
+
+        private Entry(String name, ScriptSchedule schedule) {
+            this.name = name;
+            this.schedule = schedule;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.bin.shortcmd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where a script comes from: a Pastebin paste, an HTTP(S) URL or a file in
+ * the plugin folder. Sources are created by {@link ScriptFetcher#resolve}.
+ */
+public interface ScriptSource {
+    /**
+     * The canonical link, used for display and as the cache key.
+     */
+    String getLink();
+
+    /**
+     * The host used for health tracking and per-host limits, or {@code null}
+     * for local sources that never touch the network.
+     */
+    String getHost();
+
+    /**
+     * Opens the script body. {@code cached} carries the validators of a
+     * cached copy for a conditional request and may be {@code null}.
+     */
+    Response open(ContentCache.Entry cached, int connectTimeout, int readTimeout) throws IOException;
+
+    /**
+     * An opened source. The body must be closed, which for HTTP returns the
+     * connection to the keep-alive pool.
+     */
+    final class Response implements Closeable {
+        private final int status;
+        private final InputStream body;
+        private final String etag;
+        private final String lastModified;
+
+        public Response(int status, InputStream body, String etag, String lastModified) {
+            this.status = status;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * The HTTP status; local sources always answer 200.
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
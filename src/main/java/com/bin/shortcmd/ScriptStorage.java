@@ -0,0 +1,82 @@
+package com.bin.shortcmd;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persistent store for saved links ({@code save}), saved scripts
+ * ({@code savecmd}) and their schedules ({@code schedule}). Reads are served from memory; implementations decide
+ * how and when mutations reach the disk.
+ */
+public interface ScriptStorage {
+    String getLink(String name);
+
+    void putLink(String name, String link);
+
+    boolean removeLink(String name);
+
+    Set<String> getLinkNames();
+
+    StoredScript getScript(String name);
+
+    void putScript(String name, StoredScript script);
+
+    boolean removeScript(String name);
+
+    Set<String> getScriptNames();
+
+    ScriptSchedule getSchedule(String name);
+
+    void putSchedule(String name, ScriptSchedule schedule);
+
+    boolean removeSchedule(String name);
+
+    Set<String> getScheduleNames();
+
+    /**
+     * Returns up to {@code limit} link and script names starting with
+     * {@code prefix}, ignoring case, in sorted order.
+     */
+    List<String> completeNames(String prefix, int limit);
+
+    /**
+     * Requests a compaction of the on-disk representation.
+     */
+    void compact();
+
+    /**
+     * Forgets the script bodies that no saved script refers to any more and
+     * requests a compaction that leaves them out. Returns what was dropped.
+     */
+    Reclaimed collectGarbage();
+
+    /**
+     * Persists all pending mutations and releases file handles.
+     */
+    void close();
+
+    /**
+     * Script bodies dropped by a garbage collection.
+     */
+    final class Reclaimed {
+        private final int count;
+        private final long bytes;
+
+        public Reclaimed(int count, long bytes) {
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        public Reclaimed plus(Reclaimed other) {
+            return new Reclaimed(count + other.count, bytes + other.bytes);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
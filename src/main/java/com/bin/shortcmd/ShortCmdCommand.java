@@ -4,39 +4,32 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.Bukkit;
 import org.bukkit.util.StringUtil;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class ShortCmdCommand implements CommandExecutor, TabCompleter {
+    private static final Set<String> SUBCOMMANDS = new HashSet<>(Arrays.asList(
+        "help", "run", "save", "savecmd", "storage", "lang", "reload", "mode", "health", "stats", "schedule", "jobs",
+        "cancel", "resume"));
+
     private final ShortCmdPlugin plugin;
-    private final Map<UUID, Boolean> playerModes = new HashMap<>(); // true = console, false = player
+    private final Metrics.Histogram dispatchTime;
+    private final Metrics.Counter blockedLines;
 
     public ShortCmdCommand(ShortCmdPlugin plugin) {
         this.plugin = plugin;
-        loadPlayerModes();
-    }
-
-    private void loadPlayerModes() {
-        FileConfiguration modesConfig = plugin.getModesConfig();
-        for (String key : modesConfig.getKeys(false)) {
-            playerModes.put(UUID.fromString(key), modesConfig.getBoolean(key));
-        }
-    }
-
-    private void savePlayerMode(UUID uuid, boolean mode) {
-        playerModes.put(uuid, mode);
-        plugin.getModesConfig().set(uuid.toString(), mode);
-        plugin.saveModesConfig();
+        this.dispatchTime = plugin.getMetrics().histogram("shortcmd_dispatch_command_seconds",
+            "Time spent in dispatchCommand per script line");
+        this.blockedLines = plugin.getMetrics().counter("shortcmd_lines_blocked_total",
+            "Script lines skipped by the blocklist");
     }
 
     @Override
@@ -48,26 +41,13 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
             }
 
             String subCommand = args[0].toLowerCase(Locale.ROOT);
-            switch (subCommand) {
-                case "help":
-                    return handleHelp(sender);
-                case "run":
-                    return handleRun(sender, args);
-                case "save":
-                    return handleSave(sender, args);
-                case "savecmd":
-                    return handleSaveCmd(sender, args);
-                case "storage":
-                    return handleStorage(sender, args);
-                case "lang":
-                    return handleLang(sender, args);
-                case "reload":
-                    return handleReload(sender);
-                case "mode":
-                    return handleMode(sender, args);
-                default:
-                    sendMessage(sender, "unknown");
-                    return true;
+            long start = System.nanoTime();
+            try {
+                return handleSubCommand(sender, subCommand, args);
+            } finally {
+                plugin.getMetrics().histogram("shortcmd_command_seconds", "Main-thread time per subcommand",
+                    "subcommand", SUBCOMMANDS.contains(subCommand) ? subCommand : "unknown")
+                    .record(System.nanoTime() - start);
             }
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Command error", e);
@@ -76,6 +56,42 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    private boolean handleSubCommand(CommandSender sender, String subCommand, String[] args) {
+        switch (subCommand) {
+            case "help":
+                return handleHelp(sender);
+            case "run":
+                return handleRun(sender, args);
+            case "save":
+                return handleSave(sender, args);
+            case "savecmd":
+                return handleSaveCmd(sender, args);
+            case "storage":
+                return handleStorage(sender, args);
+            case "lang":
+                return handleLang(sender, args);
+            case "reload":
+                return handleReload(sender);
+            case "mode":
+                return handleMode(sender, args);
+            case "health":
+                return handleHealth(sender);
+            case "stats":
+                return handleStats(sender);
+            case "schedule":
+                return handleSchedule(sender, args);
+            case "jobs":
+                return handleJobs(sender);
+            case "cancel":
+                return handleCancel(sender, args);
+            case "resume":
+                return handleResume(sender, args);
+            default:
+                sendMessage(sender, "unknown");
+                return true;
+        }
+    }
+
     private boolean handleHelp(CommandSender sender) {
         if (!checkPermission(sender, "shortcmd.help")) {
             return true;
@@ -89,6 +105,12 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
         sendFormatted(sender, "storage", "storage-desc");
         sendFormatted(sender, "lang", "lang-desc");
         sendFormatted(sender, "mode", "mode-desc");
+        sendFormatted(sender, "health", "health-desc");
+        sendFormatted(sender, "stats", "stats-desc");
+        sendFormatted(sender, "schedule", "schedule-desc");
+        sendFormatted(sender, "jobs", "jobs-desc");
+        sendFormatted(sender, "cancel", "cancel-desc");
+        sendFormatted(sender, "resume", "resume-desc");
         if (sender.hasPermission("shortcmd.reload") || sender.hasPermission("shortcmd.*")) {
             sendFormatted(sender, "reload", "reload-desc");
         }
@@ -123,11 +145,11 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
 
         switch (mode) {
             case "console":
-                savePlayerMode(player.getUniqueId(), true);
+                plugin.getPlayerModes().setConsoleMode(player.getUniqueId(), true);
                 sendMessage(sender, "mode-set", "%mode%", "CONSOLE");
                 break;
             case "player":
-                savePlayerMode(player.getUniqueId(), false);
+                plugin.getPlayerModes().setConsoleMode(player.getUniqueId(), false);
                 sendMessage(sender, "mode-set", "%mode%", "PLAYER");
                 break;
             default:
@@ -146,58 +168,100 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        if (!checkInternetConnection()) {
-            sendMessage(sender, "no-internet");
+        List<String> specs = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+        boolean profile = specs.removeIf(arg -> arg.equalsIgnoreCase("--profile"));
+        List<String> sources = splitSources(specs.toArray(new String[0]));
+        if (sources.isEmpty()) {
+            sendMessage(sender, "run-error");
             return true;
         }
-
-        String link = args[1];
-        if (!link.startsWith("http")) {
-            link = "https://pastebin.com/raw/" + link;
+        ScriptProfiler profiler = profile ? newProfiler(sources.get(0)) : null;
+        String key = "run:" + String.join(",", sources);
+        String label = String.join(",", sources);
+        if (sources.size() > 1 || isManifest(sources.get(0))) {
+            resolveSources(sender, sources, new ArrayList<>(), "run-start",
+                resolved -> startRun(sender, key, label, run -> runSources(sender, resolved, profiler, run)),
+                e -> handleRunError(sender, e));
+            return true;
         }
 
-        sendMessage(sender, "run-start", "%link%", link);
-
-        try {
-            URL url = new URL(link);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            conn.setConnectTimeout(plugin.getConfig().getInt("timeouts.connect", 10000));
-            conn.setReadTimeout(plugin.getConfig().getInt("timeouts.read", 10000));
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                sendMessage(sender, "run-fail", "%error%", "HTTP " + responseCode);
-                return true;
-            }
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"))) {
-                List<String> blockedCommands = plugin.getConfig().getStringList("blocked-commands");
-                int executedCount = 0;
-                String line;
-                int delay = plugin.getConfig().getInt("command-delay", 100);
+        ScriptSource source = resolveSource(sender, sources.get(0), "run-fail");
+        if (source == null) {
+            return true;
+        }
+        startRun(sender, key, label, run -> {
+            sendMessage(sender, "run-start", "%link%", source.getLink());
+            plugin.getFetcher().fetch(source, new ScriptFetcher.Callback<List<String>>() {
+                @Override
+                public void onSuccess(List<String> commands) {
+                    runFetched(sender, sources.get(0), commands, profiler, run, null);
+                }
 
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    if (!line.isEmpty()) {
-                        executeCommand(sender, line, blockedCommands);
-                        executedCount++;
-                        if (delay > 0) {
-                            Thread.sleep(delay);
-                        }
-                    }
+                @Override
+                public void onFailure(Exception e) {
+                    run.finish();
+                    handleRunError(sender, e);
                 }
+            });
+        });
+        return true;
+    }
 
+    /**
+     * Runs the lines fetched for {@code /shortcmd run <spec>}, skipping the
+     * lines {@code resumed} already got through.
+     */
+    private void runFetched(CommandSender sender, String spec, List<String> commands, ScriptProfiler profiler,
+                            ScriptRuns.Run run, ScriptCheckpoints.Checkpoint resumed) {
+        if (isSenderGone(sender)) {
+            keepCheckpoint(resumed);
+            run.finish();
+            return;
+        }
+        String hash = Hashes.sha256Hex(commands);
+        if (!checkResumed(sender, resumed, hash)) {
+            run.finish();
+            return;
+        }
+        int offset = resumed != null ? resumed.getLine() : 0;
+        AuditLog.Script audit = audit(sender, spec, offset);
+        ScriptExpander expander = expand(sender, commands.iterator());
+        ScriptJob job = new ScriptJob(sender, skip(expander, offset),
+            profiled(profiler, line -> executeCommand(sender, line, audit)),
+            executedCount -> {
                 if (executedCount > 0) {
                     sendMessage(sender, "run-success", "%count%", String.valueOf(executedCount));
                 } else {
                     sendMessage(sender, "run-empty");
                 }
-            }
-        } catch (Exception e) {
-            handleRunError(sender, e);
+                reportProfile(sender, profiler);
+            },
+            plugin.getConfig().getInt("command-delay", 100));
+        offload(job, sender, profiler, null, audit);
+        run.setTotal(Math.max(0, commands.size() - offset));
+        run.attach(job);
+        checkpoint(run, job, expander, ScriptCheckpoints.RUN, spec, hash, offset);
+        plugin.getDispatcher().submit(job);
+    }
+
+    /**
+     * Starts {@code body} as a tracked run of {@code key}, telling the sender
+     * if another run of the same script made the duplicate policy queue,
+     * merge or reject it. Returns {@code null} if the run was rejected.
+     */
+    private ScriptRuns.Run startRun(CommandSender sender, String key, String label, Consumer<ScriptRuns.Run> body) {
+        boolean duplicate = plugin.getRuns().isActive(key);
+        ScriptRuns.Run run = plugin.getRuns().start(key, label, sender, body);
+        if (run == null) {
+            sendMessage(sender, "job-rejected", "%name%", label);
+        } else if (duplicate && run.isWaiting()) {
+            sendMessage(sender, "job-queued", "%name%", label, "%id%", String.valueOf(run.getId()));
+        } else if (duplicate) {
+            String id = String.valueOf(run.getId());
+            sendMessage(sender, "job-merged", "%name%", label, "%id%", id);
+            run.onEnd(() -> sendMessage(sender, "job-finished", "%name%", label, "%id%", id));
         }
-        return true;
+        return run;
     }
 
     private boolean handleSave(CommandSender sender, String[] args) {
@@ -213,8 +277,7 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
         String link = args[1];
         String name = args[2];
 
-        plugin.getStorage().set("commands." + name, link);
-        plugin.saveStorage();
+        plugin.getStorage().putLink(name, link);
 
         sendMessage(sender, "save-success", "%name%", name, "%link%", link);
         return true;
@@ -230,59 +293,243 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        String link = args[1];
+        List<String> sources = splitSources(new String[] {args[1]});
+        if (sources.isEmpty()) {
+            sendMessage(sender, "savecmd-error");
+            return true;
+        }
         String name = args.length > 2 ? args[2] : "cmd_" + System.currentTimeMillis();
+        if (sources.size() > 1 || isManifest(sources.get(0))) {
+            resolveSources(sender, sources, new ArrayList<>(), "savecmd-start",
+                resolved -> saveSources(sender, name, resolved), e -> handleSaveCmdError(sender, e));
+            return true;
+        }
 
-        if (!link.startsWith("http")) {
-            link = "https://pastebin.com/raw/" + link;
+        ScriptSource source = resolveSource(sender, sources.get(0), "savecmd-fail");
+        if (source == null) {
+            return true;
         }
+        sendMessage(sender, "savecmd-start", "%link%", source.getLink());
 
-        sendMessage(sender, "savecmd-start", "%link%", link);
+        File target = plugin.getScripts().newIngestFile();
+        plugin.getFetcher().fetchScript(source, target, plugin.getScripts().newIngest(),
+            new ScriptFetcher.Callback<ScriptIngest.Result>() {
+            @Override
+            public void onSuccess(ScriptIngest.Result result) {
+                try {
+                    if (result.getLineCount() > 0) {
+                        plugin.getScripts().put(name, result);
+                        sendMessage(sender, "savecmd-success", "%name%", name, "%count%",
+                            String.valueOf(result.getLineCount()));
+                        reportUnknownCommands(sender, result);
+                    } else {
+                        sendMessage(sender, "savecmd-empty");
+                    }
+                } finally {
+                    plugin.getScripts().finishIngest(target);
+                }
+            }
 
-        try {
-            URL url = new URL(link);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            conn.setConnectTimeout(plugin.getConfig().getInt("timeouts.connect", 10000));
-            conn.setReadTimeout(plugin.getConfig().getInt("timeouts.read", 10000));
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
-                sendMessage(sender, "savecmd-fail", "%error%", "HTTP " + responseCode);
-                return true;
+            @Override
+            public void onFailure(Exception e) {
+                plugin.getScripts().finishIngest(target);
+                handleSaveCmdError(sender, e);
             }
+        });
+        return true;
+    }
 
-            StringBuilder commands = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    if (!line.isEmpty()) {
-                        commands.append(line).append("\n");
-                    }
+    /**
+     * Splits source arguments on spaces and commas into links, paste codes
+     * and {@code @manifest} entries.
+     */
+    private List<String> splitSources(String[] args) {
+        List<String> sources = new ArrayList<>();
+        for (String arg : args) {
+            for (String source : arg.split(",")) {
+                if (!source.isEmpty()) {
+                    sources.add(source);
                 }
             }
+        }
+        return sources;
+    }
 
-            if (commands.length() > 0) {
-                plugin.getStorage().set("saved_commands." + name, commands.toString().trim());
-                plugin.saveStorage();
-                sendMessage(sender, "savecmd-success", "%name%", name, "%count%", 
-                    String.valueOf(commands.toString().split("\n").length));
-            } else {
-                sendMessage(sender, "savecmd-empty");
+    private boolean isManifest(String source) {
+        return source.length() > 1 && source.charAt(0) == '@';
+    }
+
+    /**
+     * Resolves a source argument, telling the sender under {@code failKey}
+     * if it is invalid.
+     */
+    private ScriptSource resolveSource(CommandSender sender, String spec, String failKey) {
+        try {
+            return plugin.getFetcher().resolve(spec);
+        } catch (IllegalArgumentException e) {
+            sendMessage(sender, failKey, "%error%", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Resolves {@code specs} into {@code resolved}, expanding {@code @manifest}
+     * entries into the sources they list (one source per line, {@code #}
+     * comments allowed), and passes the result to {@code then}. Manifests are
+     * fetched one after another; the sources themselves are fetched in
+     * parallel afterwards.
+     */
+    private void resolveSources(CommandSender sender, List<String> specs, List<ScriptSource> resolved,
+                                String startKey, Consumer<List<ScriptSource>> then, Consumer<Exception> onError) {
+        for (int i = 0; i < specs.size(); i++) {
+            String spec = specs.get(i);
+            ScriptSource source;
+            try {
+                source = plugin.getFetcher().resolve(isManifest(spec) ? spec.substring(1) : spec);
+            } catch (IllegalArgumentException e) {
+                onError.accept(e);
+                return;
             }
-        } catch (Exception e) {
-            handleSaveCmdError(sender, e);
+            if (!isManifest(spec)) {
+                resolved.add(source);
+                continue;
+            }
+
+            List<String> rest = new ArrayList<>(specs.subList(i + 1, specs.size()));
+            sendMessage(sender, startKey, "%link%", source.getLink());
+            plugin.getFetcher().fetch(source, new ScriptFetcher.Callback<List<String>>() {
+                @Override
+                public void onSuccess(List<String> lines) {
+                    List<String> expanded = new ArrayList<>();
+                    for (String line : lines) {
+                        if (line.charAt(0) != '#' && line.charAt(0) != '@') {
+                            expanded.add(line);
+                        }
+                    }
+                    expanded.addAll(rest);
+                    resolveSources(sender, expanded, resolved, startKey, then, onError);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    onError.accept(e);
+                }
+            });
+            return;
         }
-        return true;
+
+        if (resolved.isEmpty()) {
+            sendMessage(sender, "sources-empty");
+            return;
+        }
+        int maxSources = Math.max(1, plugin.getConfig().getInt("fetch.max-sources", 32));
+        if (resolved.size() > maxSources) {
+            sendMessage(sender, "sources-too-many", "%max%", String.valueOf(maxSources));
+            return;
+        }
+        sendMessage(sender, "sources-start", "%count%", String.valueOf(resolved.size()));
+        then.accept(resolved);
     }
 
-    private void handleSaveCmdError(CommandSender sender, Exception e) {
+    private boolean skipFailedSources() {
+        return "skip".equalsIgnoreCase(plugin.getConfig().getString("fetch.on-failure", "abort"));
+    }
+
+    private void runSources(CommandSender sender, List<ScriptSource> sources, ScriptProfiler profiler,
+                            ScriptRuns.Run run) {
+        if (isSenderGone(sender)) {
+            run.finish();
+            return;
+        }
+        boolean skipFailed = skipFailedSources();
+        SourceSequence sequence = new SourceSequence(plugin.getFetcher().fetchAll(sources), skipFailed,
+            (link, error) -> {
+                sendMessage(sender, skipFailed ? "source-skipped" : "source-aborted",
+                    "%link%", link, "%error%", describeError(error));
+                plugin.getLogger().log(Level.WARNING, "Source " + link + " failed", error);
+            }, lines -> expand(sender, lines));
+        AuditLog.Script audit = audit(sender, run.getLabel(), 0);
+        ScriptJob job = new ScriptJob(sender, sequence,
+            profiled(profiler, line -> executeCommand(sender, line, audit)),
+            executedCount -> {
+                if (sequence.isAborted()) {
+                    return;
+                }
+                if (executedCount > 0) {
+                    sendMessage(sender, "run-success", "%count%", String.valueOf(executedCount));
+                } else {
+                    sendMessage(sender, "run-empty");
+                }
+                reportProfile(sender, profiler);
+            },
+            plugin.getConfig().getInt("command-delay", 100));
+        offload(job, sender, profiler, null, audit);
+        run.attach(job);
+        plugin.getDispatcher().submit(job);
+    }
+
+    private void saveSources(CommandSender sender, String name, List<ScriptSource> scripts) {
+        List<FetchedSource<ScriptIngest.Result>> sources = new ArrayList<>();
+        File target = plugin.getScripts().newIngestFile();
+        sources.addAll(plugin.getFetcher().fetchScripts(scripts, target,
+            plugin.getScripts().newIngest(), skipFailedSources(), new ScriptFetcher.Callback<ScriptIngest.Result>() {
+                @Override
+                public void onSuccess(ScriptIngest.Result result) {
+                    try {
+                        for (FetchedSource<ScriptIngest.Result> source : sources) {
+                            Throwable error = source.getError();
+                            if (error != null) {
+                                sendMessage(sender, "source-skipped", "%link%", source.getLink(),
+                                    "%error%", describeError(error));
+                            }
+                        }
+                        if (result.getLineCount() > 0) {
+                            plugin.getScripts().put(name, result);
+                            sendMessage(sender, "savecmd-success", "%name%", name, "%count%",
+                                String.valueOf(result.getLineCount()));
+                            reportUnknownCommands(sender, result);
+                        } else {
+                            sendMessage(sender, "savecmd-empty");
+                        }
+                    } finally {
+                        plugin.getScripts().finishIngest(target);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    plugin.getScripts().finishIngest(target);
+                    handleSaveCmdError(sender, e);
+                }
+            }));
+    }
+
+    /**
+     * Warns about commands in a saved script that no plugin or the server
+     * answers to, so typos show up now rather than when the script runs.
+     */
+    private void reportUnknownCommands(CommandSender sender, ScriptIngest.Result result) {
+        Set<String> unknown = plugin.getCommandResolver().findUnknown(result.getLabels());
+        if (!unknown.isEmpty()) {
+            sendMessage(sender, "savecmd-unknown", "%count%", String.valueOf(unknown.size()),
+                "%commands%", String.join(", ", unknown));
+        }
+    }
+
+    private String describeError(Throwable e) {
         String error = e.getMessage();
+        if (error == null) return e.getClass().getSimpleName();
         if (error.contains("403")) error = "Pastebin blocked request";
         else if (error.contains("404")) error = "Paste not found";
-        else if (error.contains("connect timed out")) error = "Connection timeout";
-        
+        else if (error.contains("timed out")) error = "Connection timeout";
+        return error;
+    }
+
+    private void handleSaveCmdError(CommandSender sender, Exception e) {
+        if (sendHostUnavailable(sender, e)) {
+            return;
+        }
+        String error = describeError(e);
         sendMessage(sender, "savecmd-fail", "%error%", error);
         plugin.getLogger().log(Level.SEVERE, "Command save failed", e);
     }
@@ -292,6 +539,12 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
+        if (args.length == 2 && args[1].equalsIgnoreCase("gc")) {
+            ScriptStorage.Reclaimed reclaimed = plugin.getScripts().collectGarbage();
+            sendMessage(sender, "storage-gc", "%count%", String.valueOf(reclaimed.getCount()),
+                "%size%", formatBytes(reclaimed.getBytes()));
+            return true;
+        }
         if (args.length < 3) {
             sendMessage(sender, "storage-error");
             return true;
@@ -300,20 +553,21 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
         String name = args[1];
         String action = args[2].toLowerCase(Locale.ROOT);
         
-        String savedCommands = plugin.getStorage().getString("saved_commands." + name);
-        if (savedCommands != null) {
+        CompiledScript script = plugin.getScripts().get(name);
+        if (script != null) {
             switch (action) {
                 case "delete":
-                    plugin.getStorage().set("saved_commands." + name, null);
-                    plugin.saveStorage();
+                    plugin.getScripts().remove(name);
+                    plugin.getScheduler().unschedule(name);
                     sendMessage(sender, "storage-delete", "%name%", name);
                     break;
                 case "run":
-                    sendMessage(sender, "storage-run-start", "%name%", name);
-                    for (String cmd : savedCommands.split("\n")) {
-                        executeCommand(sender, cmd.trim(), plugin.getConfig().getStringList("blocked-commands"));
-                    }
-                    sendMessage(sender, "storage-run-success", "%name%", name);
+                case "profile":
+                    ScriptProfiler profiler = action.equals("profile") ? newProfiler(name) : null;
+                    startRun(sender, "storage:" + name, name, run -> {
+                        sendMessage(sender, "storage-run-start", "%name%", name);
+                        runCompiledScript(sender, name, script, profiler, run, 0);
+                    });
                     break;
                 default:
                     sendMessage(sender, "storage-action-error");
@@ -321,7 +575,7 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        String link = plugin.getStorage().getString("commands." + name);
+        String link = plugin.getStorage().getLink(name);
         if (link == null) {
             sendMessage(sender, "storage-not-found", "%name%", name);
             return true;
@@ -329,14 +583,17 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
 
         switch (action) {
             case "delete":
-                plugin.getStorage().set("commands." + name, null);
-                plugin.saveStorage();
+                plugin.getStorage().removeLink(name);
+                plugin.getScheduler().unschedule(name);
                 sendMessage(sender, "storage-delete", "%name%", name);
                 break;
             case "run":
-                sendMessage(sender, "storage-run-start", "%name%", name);
-                executeStoredCommand(sender, link);
-                sendMessage(sender, "storage-run-success", "%name%", name);
+            case "profile":
+                ScriptProfiler profiler = action.equals("profile") ? newProfiler(name) : null;
+                startRun(sender, "storage:" + name, name, run -> {
+                    sendMessage(sender, "storage-run-start", "%name%", name);
+                    executeStoredCommand(sender, name, link, profiler, run, null);
+                });
                 break;
             default:
                 sendMessage(sender, "storage-action-error");
@@ -344,6 +601,291 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private boolean handleSchedule(CommandSender sender, String[] args) {
+        if (!checkPermission(sender, "shortcmd.schedule")) {
+            return true;
+        }
+
+        if (args.length == 2 && args[1].equalsIgnoreCase("list")) {
+            Set<String> names = plugin.getScheduler().getNames();
+            if (names.isEmpty()) {
+                sendMessage(sender, "schedule-empty");
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            sendMessage(sender, "schedule-header");
+            for (String name : names) {
+                ScriptSchedule schedule = plugin.getScheduler().getSchedule(name);
+                sendMessage(sender, "schedule-line", "%name%", name, "%spec%", schedule.getSpec(),
+                    "%next%", String.valueOf(Math.max(0, (plugin.getScheduler().getNextRun(name) - now + 999) / 1000)),
+                    "%missed%", schedule.getMissed().name().toLowerCase(Locale.ROOT),
+                    "%overlap%", schedule.getOverlap().name().toLowerCase(Locale.ROOT));
+            }
+            return true;
+        }
+        if (args.length < 3) {
+            sendMessage(sender, "schedule-error");
+            return true;
+        }
+
+        String name = args[1];
+        if (args[2].equalsIgnoreCase("off")) {
+            if (plugin.getScheduler().unschedule(name)) {
+                sendMessage(sender, "schedule-removed", "%name%", name);
+            } else {
+                sendMessage(sender, "schedule-not-found", "%name%", name);
+            }
+            return true;
+        }
+        if (plugin.getStorage().getScript(name) == null && plugin.getStorage().getLink(name) == null) {
+            sendMessage(sender, "storage-not-found", "%name%", name);
+            return true;
+        }
+
+        String missed = plugin.getConfig().getString("schedule.missed", "skip");
+        String overlap = plugin.getConfig().getString("schedule.overlap", "skip");
+        StringBuilder spec = new StringBuilder();
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i].toLowerCase(Locale.ROOT);
+            if (arg.startsWith("missed=")) {
+                missed = arg.substring("missed=".length());
+            } else if (arg.startsWith("overlap=")) {
+                overlap = arg.substring("overlap=".length());
+            } else {
+                spec.append(spec.length() > 0 ? " " : "").append(args[i]);
+            }
+        }
+
+        ScriptSchedule schedule;
+        try {
+            schedule = ScriptSchedule.parse(spec.toString(), ScriptSchedule.Missed.of(missed),
+                ScriptSchedule.Overlap.of(overlap), 0);
+        } catch (IllegalArgumentException e) {
+            sendMessage(sender, "schedule-invalid", "%error%", e.getMessage());
+            return true;
+        }
+        plugin.getScheduler().schedule(name, schedule);
+        sendMessage(sender, "schedule-set", "%name%", name, "%spec%", schedule.getSpec());
+        return true;
+    }
+
+    private boolean handleHealth(CommandSender sender) {
+        if (!checkPermission(sender, "shortcmd.health")) {
+            return true;
+        }
+
+        List<HostHealth.Snapshot> hosts = plugin.getHostHealth().snapshot();
+        if (hosts.isEmpty()) {
+            sendMessage(sender, "health-empty");
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        sendMessage(sender, "health-header");
+        for (HostHealth.Snapshot host : hosts) {
+            sendMessage(sender, "health-line",
+                "%host%", host.host,
+                "%state%", host.state.name(),
+                "%failures%", String.valueOf(host.consecutiveFailures),
+                "%success%", formatAgo(now, host.lastSuccess),
+                "%failure%", formatAgo(now, host.lastFailure));
+        }
+        return true;
+    }
+
+    private boolean handleStats(CommandSender sender) {
+        if (!checkPermission(sender, "shortcmd.stats")) {
+            return true;
+        }
+
+        List<Metrics.Sample> samples = plugin.getMetrics().snapshot();
+        if (samples.isEmpty()) {
+            sendMessage(sender, "stats-empty");
+            return true;
+        }
+
+        sendMessage(sender, "stats-header");
+        for (Metrics.Sample sample : samples) {
+            if (sample.counter != null) {
+                sendMessage(sender, "stats-counter", "%name%", sample.name,
+                    "%value%", String.valueOf(sample.counter.get()));
+                continue;
+            }
+            long count = sample.histogram.count();
+            if (count == 0) {
+                continue;
+            }
+            sendMessage(sender, "stats-histogram", "%name%", sample.name,
+                "%count%", String.valueOf(count),
+                "%avg%", formatMillis(sample.histogram.sumNanos() / count),
+                "%p50%", formatMillis(sample.histogram.quantileNanos(0.5)),
+                "%p99%", formatMillis(sample.histogram.quantileNanos(0.99)));
+        }
+        return true;
+    }
+
+    private boolean handleJobs(CommandSender sender) {
+        if (!checkPermission(sender, "shortcmd.jobs")) {
+            return true;
+        }
+
+        Collection<ScriptRuns.Run> runs = plugin.getRuns().getRuns();
+        if (runs.isEmpty()) {
+            sendMessage(sender, "jobs-empty");
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        sendMessage(sender, "jobs-header");
+        for (ScriptRuns.Run run : runs) {
+            String state;
+            String progress;
+            if (run.isWaiting()) {
+                state = "jobs-waiting";
+                progress = "-";
+            } else if (run.getExecuted() < 0) {
+                state = "jobs-fetching";
+                progress = "-";
+            } else {
+                state = "jobs-running";
+                progress = run.getTotal() > 0 ? run.getExecuted() + "/" + run.getTotal()
+                    : String.valueOf(run.getExecuted());
+            }
+            sendMessage(sender, "jobs-line", "%id%", String.valueOf(run.getId()), "%name%", run.getLabel(),
+                "%state%", plugin.getMessages().render(state), "%progress%", progress,
+                "%time%", formatAgo(now, run.getCreatedAt()), "%sender%", run.getSender().getName());
+        }
+        return true;
+    }
+
+    private boolean handleCancel(CommandSender sender, String[] args) {
+        if (!checkPermission(sender, "shortcmd.cancel")) {
+            return true;
+        }
+
+        if (args.length < 2) {
+            sendMessage(sender, "cancel-error");
+            return true;
+        }
+        ScriptRuns.Run run;
+        try {
+            run = plugin.getRuns().get(Integer.parseInt(args[1].startsWith("#") ? args[1].substring(1) : args[1]));
+        } catch (NumberFormatException e) {
+            run = null;
+        }
+        if (run == null) {
+            sendMessage(sender, "cancel-not-found", "%id%", args[1]);
+            return true;
+        }
+        run.cancel();
+        sendMessage(sender, "cancel-success", "%id%", String.valueOf(run.getId()), "%name%", run.getLabel());
+        return true;
+    }
+
+    private boolean handleResume(CommandSender sender, String[] args) {
+        if (!checkPermission(sender, "shortcmd.resume")) {
+            return true;
+        }
+
+        ScriptCheckpoints checkpoints = plugin.getCheckpoints();
+        if (args.length < 2) {
+            Collection<ScriptCheckpoints.Checkpoint> stopped = checkpoints.getStopped();
+            if (stopped.isEmpty()) {
+                sendMessage(sender, "resume-empty");
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            sendMessage(sender, "resume-header");
+            for (ScriptCheckpoints.Checkpoint checkpoint : stopped) {
+                sendMessage(sender, "resume-line", "%id%", String.valueOf(checkpoint.getId()),
+                    "%name%", checkpoint.getLabel(), "%line%", String.valueOf(checkpoint.getLine()),
+                    "%time%", formatAgo(now, checkpoint.getCreatedAt()));
+            }
+            return true;
+        }
+        if (args.length > 3 || (args.length == 3 && !args[2].equalsIgnoreCase("discard"))) {
+            sendMessage(sender, "resume-error");
+            return true;
+        }
+
+        ScriptCheckpoints.Checkpoint checkpoint;
+        try {
+            checkpoint = checkpoints.take(Integer.parseInt(args[1].startsWith("#") ? args[1].substring(1) : args[1]));
+        } catch (NumberFormatException e) {
+            checkpoint = null;
+        }
+        if (checkpoint == null) {
+            sendMessage(sender, "resume-not-found", "%id%", args[1]);
+            return true;
+        }
+        String id = String.valueOf(checkpoint.getId());
+        String name = checkpoint.getLabel();
+        if (args.length == 3) {
+            sendMessage(sender, "resume-discarded", "%id%", id, "%name%", name);
+            return true;
+        }
+
+        String target = checkpoint.getTarget();
+        String line = String.valueOf(checkpoint.getLine());
+        ScriptCheckpoints.Checkpoint resumed = checkpoint;
+        String key = (ScriptCheckpoints.RUN.equals(checkpoint.getKind()) ? "run:" : "storage:") + target;
+        // A merged resume joins the running script and never runs its own body
+        boolean merged = plugin.getRuns().getPolicy() == ScriptRuns.Policy.MERGE && plugin.getRuns().isActive(key);
+        ScriptRuns.Run run;
+        if (ScriptCheckpoints.RUN.equals(checkpoint.getKind())) {
+            ScriptSource source = resolveSource(sender, target, "run-fail");
+            if (source == null) {
+                keepCheckpoint(resumed);
+                return true;
+            }
+            run = startRun(sender, key, name, started -> {
+                sendMessage(sender, "resume-start", "%id%", id, "%name%", name, "%line%", line);
+                plugin.getFetcher().fetch(source, new ScriptFetcher.Callback<List<String>>() {
+                    @Override
+                    public void onSuccess(List<String> commands) {
+                        runFetched(sender, target, commands, null, started, resumed);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        keepCheckpoint(resumed);
+                        started.finish();
+                        handleRunError(sender, e);
+                    }
+                });
+            });
+        } else {
+            CompiledScript script = plugin.getScripts().get(target);
+            String link = script == null ? plugin.getStorage().getLink(target) : null;
+            if (script == null && link == null) {
+                checkResumed(sender, resumed, null);
+                return true;
+            }
+            if (script != null && !checkResumed(sender, resumed, script.getHash())) {
+                return true;
+            }
+            run = startRun(sender, key, name, started -> {
+                sendMessage(sender, "resume-start", "%id%", id, "%name%", name, "%line%", line);
+                if (script != null) {
+                    runCompiledScript(sender, target, script, null, started, resumed.getLine());
+                } else {
+                    executeStoredCommand(sender, target, link, null, started, resumed);
+                }
+            });
+        }
+        if (run == null || merged) {
+            keepCheckpoint(resumed);
+        }
+        return true;
+    }
+
+    private String formatMillis(long nanos) {
+        return nanos == Long.MAX_VALUE ? ">10000" : String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+
+    private String formatAgo(long now, long time) {
+        return time == 0 ? "-" : ((now - time) / 1000) + "s";
+    }
+
     private boolean handleLang(CommandSender sender, String[] args) {
         if (!checkPermission(sender, "shortcmd.lang")) {
             return true;
@@ -362,6 +904,7 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
 
         plugin.getConfig().set("language", newLang);
         plugin.saveConfig();
+        plugin.getMessages().setLanguage(newLang);
         sendMessage(sender, "lang-set", "%lang%", newLang);
         return true;
     }
@@ -372,86 +915,420 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
         }
 
         plugin.reloadConfig();
-        plugin.saveStorage();
-        plugin.saveModesConfig();
+        plugin.compileBlocklist();
+        plugin.getMessages().reload();
+        plugin.getScripts().recompile(plugin.getBlocklist());
+        plugin.getDispatcher().reload();
+        plugin.getRuns().reload();
+        plugin.getCheckpoints().reload();
+        plugin.getAuditLog().reload();
+        plugin.getCommandResolver().reload();
+        plugin.getAsyncLane().reload();
+        plugin.getContentCache().reload();
+        plugin.getHostHealth().reload();
+        plugin.getFetcher().reload();
+        plugin.getMetricsExporter().reload();
+        plugin.getStorage().compact();
+        plugin.getPlayerModes().flushAsync();
         sendMessage(sender, "reload-success");
         return true;
     }
 
-    private boolean checkInternetConnection() {
-        try {
-            URLConnection connection = new URL("https://google.com").openConnection();
-            connection.setConnectTimeout(plugin.getConfig().getInt("timeouts.internet-check", 3000));
-            connection.connect();
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
     private void handleRunError(CommandSender sender, Exception e) {
-        String error = e.getMessage();
-        if (error.contains("403")) error = "Pastebin blocked request";
-        else if (error.contains("404")) error = "Paste not found";
-        else if (error.contains("connect timed out")) error = "Connection timeout";
-        
+        if (sendHostUnavailable(sender, e)) {
+            return;
+        }
+        String error = describeError(e);
         sendMessage(sender, "run-fail", "%error%", error);
         plugin.getLogger().log(Level.SEVERE, "Command execution failed", e);
     }
 
-    private void executeCommand(CommandSender sender, String command, List<String> blockedCommands) {
-        String baseCommand = command.split("\\s+")[0].toLowerCase(Locale.ROOT);
-        
-        if (blockedCommands.stream().anyMatch(cmd -> baseCommand.startsWith(cmd))) {
-            sendMessage(sender, "blocked", "%cmd%", command);
-            return;
+    private boolean sendHostUnavailable(CommandSender sender, Exception e) {
+        if (!(e instanceof ScriptFetcher.HostUnavailableException)) {
+            return false;
         }
-        
-        boolean consoleMode = true;
-        if (sender instanceof Player) {
-            Player player = (Player) sender;
-            consoleMode = playerModes.getOrDefault(player.getUniqueId(), true);
+        ScriptFetcher.HostUnavailableException unavailable = (ScriptFetcher.HostUnavailableException) e;
+        sendMessage(sender, "host-unavailable", "%host%", unavailable.getHost(),
+            "%seconds%", String.valueOf((unavailable.getRetryAfterMillis() + 999) / 1000));
+        return true;
+    }
+
+    private void executeCommand(CommandSender sender, String command, AuditLog.Script audit) {
+        int lineNumber = audit.next();
+        if (plugin.getBlocklist().isBlocked(command)) {
+            blocked(sender, command, audit, lineNumber);
+            return;
         }
+        dispatchCommand(sender, command, null, audit, lineNumber);
+    }
+
+    private void blocked(CommandSender sender, String command, AuditLog.Script audit, int lineNumber) {
+        blockedLines.increment();
+        audit.record(!(executorFor(sender) instanceof Player), lineNumber, AuditLog.BLOCKED, 0, command);
+        sendMessage(sender, "blocked", "%cmd%", command);
+    }
 
+    /**
+     * @param parsed the line split at compile time, or {@code null}
+     */
+    private void dispatchCommand(CommandSender sender, String command, CommandLine parsed, AuditLog.Script audit,
+                                 int lineNumber) {
+        CommandSender executor = executorFor(sender);
+        byte result = AuditLog.EXECUTED;
+        long elapsed = 0;
         try {
-            CommandSender executor = consoleMode 
-                ? plugin.getServer().getConsoleSender() 
-                : sender;
-                
-            plugin.getServer().dispatchCommand(executor, command);
+            long start = System.nanoTime();
+            try {
+                plugin.getCommandResolver().dispatch(executor, command, parsed);
+            } finally {
+                elapsed = System.nanoTime() - start;
+                dispatchTime.record(elapsed);
+            }
         } catch (Exception e) {
+            result = AuditLog.FAILED;
             plugin.getLogger().log(Level.WARNING, "Failed to execute command: " + command, e);
             sendMessage(sender, "command-error");
         }
+        audit.record(!(executor instanceof Player), lineNumber, result, elapsed, command);
+    }
+
+    /**
+     * Starts the audit trail of a script run from {@code source}, numbering
+     * lines after the {@code offset} a resumed run skips.
+     */
+    private AuditLog.Script audit(CommandSender sender, String source, int offset) {
+        return plugin.getAuditLog().open(sender.getName(), source).skip(offset);
+    }
+
+    /**
+     * The sender a script line runs as: the console, unless a player chose
+     * the player mode.
+     */
+    private CommandSender executorFor(CommandSender sender) {
+        if (sender instanceof Player
+            && !plugin.getPlayerModes().isConsoleMode(((Player) sender).getUniqueId())) {
+            return sender;
+        }
+        return plugin.getServer().getConsoleSender();
+    }
+
+    /**
+     * Lets {@code job} run the lines listed in {@code dispatch.async-commands}
+     * on its own async lane. Profiled runs stay on the main thread so their
+     * timings compare with each other.
+     *
+     * @param cursor the job's compiled source, whose blocklist verdict and
+     *               split line are used, or {@code null} to check each line here
+     */
+    private void offload(ScriptJob job, CommandSender sender, ScriptProfiler profiler,
+                         CompiledScript.Cursor cursor, AuditLog.Script audit) {
+        AsyncCommandLane lanes = plugin.getAsyncLane();
+        if (profiler != null || !lanes.isEnabled()) {
+            return;
+        }
+        job.setLane(lanes.open(), line -> {
+            if (cursor != null ? cursor.isBlocked() : plugin.getBlocklist().isBlocked(line)) {
+                return null;
+            }
+            CommandLine parsed = cursor != null ? cursor.getCommandLine() : null;
+            return asyncTask(sender, line, parsed != null ? parsed : CommandLine.parse(line), audit);
+        });
     }
 
-    private void executeStoredCommand(CommandSender sender, String link) {
+    /**
+     * Returns a task that runs {@code command} off the main thread, or
+     * {@code null} if its command may not run there.
+     */
+    private Runnable asyncTask(CommandSender sender, String command, CommandLine parsed, AuditLog.Script audit) {
+        Command target = plugin.getCommandResolver().find(parsed.getLabel());
+        if (target == null || !plugin.getAsyncLane().accepts(parsed.getLabel(), target.getName())) {
+            return null;
+        }
+        CommandSender executor = executorFor(sender);
+        String[] arguments = parsed.getArguments().clone();
+        int lineNumber = audit.next();
+        return () -> {
+            byte result = AuditLog.EXECUTED;
+            long start = System.nanoTime();
+            try {
+                target.execute(executor, parsed.getLabel(), arguments);
+            } catch (Throwable e) {
+                result = AuditLog.FAILED;
+                plugin.getLogger().log(Level.WARNING, "Failed to execute command: " + command, e);
+                if (plugin.isEnabled()) {
+                    plugin.getServer().getScheduler().runTask(plugin, () -> sendMessage(sender, "command-error"));
+                }
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                dispatchTime.record(elapsed);
+                audit.record(!(executor instanceof Player), lineNumber, result, elapsed, command);
+            }
+        };
+    }
+
+    /**
+     * Runs a saved script or link for {@link ScriptScheduler} as the console.
+     * Returns {@code false} if {@code name} no longer exists.
+     */
+    boolean runScheduled(String name, Runnable onFinish) {
+        CommandSender console = plugin.getServer().getConsoleSender();
+        CompiledScript script = plugin.getScripts().get(name);
+        String link = script == null ? plugin.getStorage().getLink(name) : null;
+        if (script == null && link == null) {
+            return false;
+        }
+        ScriptRuns.Run run = startRun(console, "storage:" + name, name, started -> {
+            if (script != null) {
+                runCompiledScript(console, name, script, null, started, 0);
+            } else {
+                executeStoredCommand(console, name, link, null, started, null);
+            }
+        });
+        if (run != null) {
+            run.onEnd(onFinish);
+        } else {
+            onFinish.run();
+        }
+        return true;
+    }
+
+    /**
+     * Fetches and runs the link saved as {@code name}, skipping the lines
+     * {@code resumed} already got through.
+     */
+    private void executeStoredCommand(CommandSender sender, String name, String link, ScriptProfiler profiler,
+                                      ScriptRuns.Run run, ScriptCheckpoints.Checkpoint resumed) {
+        ScriptSource source;
         try {
-            URL url = new URL(link);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            conn.setConnectTimeout(plugin.getConfig().getInt("timeouts.connect", 10000));
-            conn.setReadTimeout(plugin.getConfig().getInt("timeouts.read", 10000));
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"))) {
-                List<String> blockedCommands = plugin.getConfig().getStringList("blocked-commands");
-                String line;
-                int delay = plugin.getConfig().getInt("command-delay", 100);
-                
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    if (!line.isEmpty()) {
-                        executeCommand(sender, line, blockedCommands);
-                        if (delay > 0) {
-                            Thread.sleep(delay);
-                        }
-                    }
+            source = plugin.getFetcher().resolve(link);
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Stored command " + name + " has an invalid source: " + e.getMessage());
+            sendMessage(sender, "command-error");
+            keepCheckpoint(resumed);
+            run.finish();
+            return;
+        }
+        plugin.getFetcher().fetchCached(source, new ScriptFetcher.Callback<List<String>>() {
+            @Override
+            public void onSuccess(List<String> commands) {
+                if (isSenderGone(sender)) {
+                    keepCheckpoint(resumed);
+                    run.finish();
+                    return;
                 }
+                String hash = Hashes.sha256Hex(commands);
+                if (!checkResumed(sender, resumed, hash)) {
+                    run.finish();
+                    return;
+                }
+                int offset = resumed != null ? resumed.getLine() : 0;
+                run.setTotal(Math.max(0, commands.size() - offset));
+                runScript(sender, name, commands.iterator(), plugin.getConfig().getInt("command-delay", 100), profiler,
+                    run, hash, offset);
             }
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to execute stored command", e);
+
+            @Override
+            public void onFailure(Exception e) {
+                keepCheckpoint(resumed);
+                run.finish();
+                if (sendHostUnavailable(sender, e)) {
+                    return;
+                }
+                plugin.getLogger().log(Level.SEVERE, "Failed to execute stored command", e);
+                sendMessage(sender, "command-error");
+            }
+        });
+    }
+
+    private void runScript(CommandSender sender, String name, Iterator<String> commands, long delay,
+                           ScriptProfiler profiler, ScriptRuns.Run run, String hash, int offset) {
+        AuditLog.Script audit = audit(sender, name, offset);
+        ScriptExpander expander = expand(sender, commands);
+        ScriptJob job = new ScriptJob(sender, skip(expander, offset),
+            profiled(profiler, line -> executeCommand(sender, line, audit)),
+            executedCount -> {
+                sendMessage(sender, "storage-run-success", "%name%", name);
+                reportProfile(sender, profiler);
+            },
+            delay);
+        offload(job, sender, profiler, null, audit);
+        run.attach(job);
+        checkpoint(run, job, expander, ScriptCheckpoints.STORAGE, name, hash, offset);
+        plugin.getDispatcher().submit(job);
+    }
+
+    private void runCompiledScript(CommandSender sender, String name, CompiledScript script,
+                                   ScriptProfiler profiler, ScriptRuns.Run run, int offset) {
+        ScriptExpander cursor;
+        try {
+            cursor = skip(expand(sender, script.cursor()), offset);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not open saved script " + name, e);
             sendMessage(sender, "command-error");
+            run.finish();
+            return;
+        }
+        run.setTotal(Math.max(0, script.size() - offset));
+        AuditLog.Script audit = audit(sender, name, offset);
+        ScriptJob job = new ScriptJob(sender, cursor,
+            profiled(profiler, line -> {
+                int lineNumber = audit.next();
+                if (cursor.isBlocked()) {
+                    blocked(sender, line, audit, lineNumber);
+                } else {
+                    dispatchCommand(sender, line, cursor.getCommandLine(), audit, lineNumber);
+                }
+            }),
+            executedCount -> {
+                sendMessage(sender, "storage-run-success", "%name%", name);
+                reportProfile(sender, profiler);
+            },
+            0);
+        offload(job, sender, profiler, cursor, audit);
+        run.attach(job);
+        checkpoint(run, job, cursor, ScriptCheckpoints.STORAGE, name, script.getHash(), offset);
+        plugin.getDispatcher().submit(job);
+    }
+
+    /**
+     * Pulls the first {@code count} lines of {@code lines}, the ones a
+     * resumed script already ran.
+     */
+    private <T extends Iterator<String>> T skip(T lines, int count) {
+        for (int i = 0; i < count && lines.hasNext(); i++) {
+            lines.next();
+        }
+        return lines;
+    }
+
+    /**
+     * Keeps the position of {@code job} under the id of {@code run}, counted
+     * from line {@code offset}. It is dropped when the script completes or is
+     * cancelled, and kept for {@code /shortcmd resume} when its sender leaves
+     * or the server stops first before {@code expander} met a directive.
+     */
+    private void checkpoint(ScriptRuns.Run run, ScriptJob job, ScriptExpander expander, String kind, String target,
+                            String hash, int offset) {
+        ScriptCheckpoints checkpoints = plugin.getCheckpoints();
+        checkpoints.track(run.getId(), kind, target, run.getLabel(), hash, offset, job, expander);
+        run.onEnd(() -> checkpoints.untrack(run.getId(), job.isSenderGone() && !job.isCancelled()));
+    }
+
+    /**
+     * Whether a script started by {@code /shortcmd resume} still has the
+     * content it had when it stopped. If not, tells the sender and keeps the
+     * checkpoint so it can be dropped with {@code discard}.
+     */
+    private boolean checkResumed(CommandSender sender, ScriptCheckpoints.Checkpoint resumed, String hash) {
+        if (resumed == null || resumed.getHash().equals(hash)) {
+            return true;
+        }
+        keepCheckpoint(resumed);
+        sendMessage(sender, "resume-changed", "%id%", String.valueOf(resumed.getId()), "%name%", resumed.getLabel());
+        return false;
+    }
+
+    private void keepCheckpoint(ScriptCheckpoints.Checkpoint resumed) {
+        if (resumed != null) {
+            plugin.getCheckpoints().restore(resumed);
+        }
+    }
+
+    /**
+     * Wraps script lines so that directives such as {@code @for} are expanded
+     * while the dispatcher pulls them.
+     */
+    private ScriptExpander expand(CommandSender sender, Iterator<String> lines) {
+        return new ScriptExpander(lines, new ScriptExpander.Context() {
+            @Override
+            public Blocklist getBlocklist() {
+                return plugin.getBlocklist();
+            }
+
+            @Override
+            public List<String> getOnlinePlayers() {
+                List<String> names = new ArrayList<>();
+                for (Player player : plugin.getServer().getOnlinePlayers()) {
+                    names.add(player.getName());
+                }
+                return names;
+            }
+
+            @Override
+            public CompiledScript getScript(String name) {
+                return plugin.getScripts().get(name);
+            }
+
+            @Override
+            public void onError(String error) {
+                sendMessage(sender, "script-error", "%error%", error);
+            }
+        });
+    }
+
+    private ScriptProfiler newProfiler(String name) {
+        long thresholdMillis = Math.max(0, plugin.getConfig().getLong("profile.threshold-ms", 5));
+        return new ScriptProfiler(name, thresholdMillis * 1_000_000L);
+    }
+
+    private Consumer<String> profiled(ScriptProfiler profiler, Consumer<String> executor) {
+        return profiler != null ? profiler.wrap(executor) : executor;
+    }
+
+    /**
+     * Sends the summary of a finished profiled run and writes the full report
+     * to {@code profiles/} off the main thread.
+     */
+    private void reportProfile(CommandSender sender, ScriptProfiler profiler) {
+        if (profiler == null) {
+            return;
+        }
+        sendMessage(sender, "profile-header", "%name%", profiler.getName(),
+            "%count%", String.valueOf(profiler.getCount()),
+            "%total%", formatMillis(profiler.getTotalNanos()));
+        for (ScriptProfiler.Sample sample : profiler.getSlowest(plugin.getConfig().getInt("profile.top", 10))) {
+            sendMessage(sender, "profile-line", "%line%", String.valueOf(sample.getLine()),
+                "%time%", formatMillis(sample.getNanos()),
+                "%alloc%", formatBytes(sample.getAllocatedBytes()),
+                "%cmd%", sample.getCommand());
+        }
+        sendMessage(sender, "profile-slow", "%count%", String.valueOf(profiler.getOverThreshold().size()),
+            "%threshold%", formatMillis(profiler.getThresholdNanos()),
+            "%overruns%", String.valueOf(profiler.getTickOverruns()));
+
+        String fileName = profiler.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        if (fileName.length() > 64) {
+            fileName = fileName.substring(0, 64);
+        }
+        File file = new File(new File(plugin.getDataFolder(), "profiles"),
+            fileName + "-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".csv");
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                profiler.writeCsv(file);
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                    sendMessage(sender, "profile-saved", "%file%", "profiles/" + file.getName()));
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not write profile " + file, e);
+                plugin.getServer().getScheduler().runTask(plugin, () -> sendMessage(sender, "profile-save-fail"));
+            }
+        });
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "?";
+        }
+        if (bytes < 1024) {
+            return bytes + " B";
         }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private boolean isSenderGone(CommandSender sender) {
+        return sender instanceof Player && !((Player) sender).isOnline();
     }
 
     @Override
@@ -470,6 +1347,12 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
             if (hasPermission(sender, "storage")) commands.add("storage");
             if (hasPermission(sender, "lang")) commands.add("lang");
             if (hasPermission(sender, "mode")) commands.add("mode");
+            if (hasPermission(sender, "health")) commands.add("health");
+            if (hasPermission(sender, "stats")) commands.add("stats");
+            if (hasPermission(sender, "schedule")) commands.add("schedule");
+            if (hasPermission(sender, "jobs")) commands.add("jobs");
+            if (hasPermission(sender, "cancel")) commands.add("cancel");
+            if (hasPermission(sender, "resume")) commands.add("resume");
             if (hasPermission(sender, "reload")) commands.add("reload");
             
             return StringUtil.copyPartialMatches(args[0], commands, completions);
@@ -489,19 +1372,56 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
                 
             case "storage":
                 if (args.length == 2) {
-                    Set<String> keys = new HashSet<>();
-                    if (plugin.getStorage().getConfigurationSection("commands") != null) {
-                        keys.addAll(plugin.getStorage().getConfigurationSection("commands").getKeys(false));
+                    completions.addAll(plugin.getStorage().completeNames(args[1],
+                        Math.max(1, plugin.getConfig().getInt("tab-complete.limit", 50))));
+                    if (StringUtil.startsWithIgnoreCase("gc", args[1])) {
+                        completions.add(0, "gc");
                     }
-                    if (plugin.getStorage().getConfigurationSection("saved_commands") != null) {
-                        keys.addAll(plugin.getStorage().getConfigurationSection("saved_commands").getKeys(false));
-                    }
-                    return StringUtil.copyPartialMatches(args[1], new ArrayList<>(keys), completions);
+                    return completions;
                 } else if (args.length == 3) {
-                    return StringUtil.copyPartialMatches(args[2], Arrays.asList("delete", "run"), completions);
+                    return StringUtil.copyPartialMatches(args[2], Arrays.asList("delete", "run", "profile"), completions);
                 }
                 break;
                 
+            case "cancel":
+                if (args.length == 2) {
+                    List<String> ids = new ArrayList<>();
+                    for (ScriptRuns.Run run : plugin.getRuns().getRuns()) {
+                        ids.add(String.valueOf(run.getId()));
+                    }
+                    return StringUtil.copyPartialMatches(args[1], ids, completions);
+                }
+                break;
+
+            case "resume":
+                if (args.length == 2) {
+                    List<String> ids = new ArrayList<>();
+                    for (ScriptCheckpoints.Checkpoint checkpoint : plugin.getCheckpoints().getStopped()) {
+                        ids.add(String.valueOf(checkpoint.getId()));
+                    }
+                    return StringUtil.copyPartialMatches(args[1], ids, completions);
+                } else if (args.length == 3) {
+                    return StringUtil.copyPartialMatches(args[2], Collections.singletonList("discard"), completions);
+                }
+                break;
+
+            case "schedule":
+                if (args.length == 2) {
+                    completions.addAll(plugin.getStorage().completeNames(args[1],
+                        Math.max(1, plugin.getConfig().getInt("tab-complete.limit", 50))));
+                    if (StringUtil.startsWithIgnoreCase("list", args[1])) {
+                        completions.add(0, "list");
+                    }
+                    return completions;
+                } else if (args.length == 3) {
+                    return StringUtil.copyPartialMatches(args[2], Arrays.asList("every", "cron", "off"), completions);
+                } else if (args[2].equalsIgnoreCase("every") || args[2].equalsIgnoreCase("cron")) {
+                    return StringUtil.copyPartialMatches(args[args.length - 1],
+                        Arrays.asList("missed=skip", "missed=run", "overlap=skip", "overlap=queue", "overlap=parallel"),
+                        completions);
+                }
+                break;
+
             case "lang":
                 if (args.length == 2) {
                     return StringUtil.copyPartialMatches(args[1], Arrays.asList("ru", "en"), completions);
@@ -523,39 +1443,15 @@ public class ShortCmdCommand implements CommandExecutor, TabCompleter {
     }
 
     private void sendMessage(CommandSender sender, String key, String... placeholders) {
-        String lang = plugin.getConfig().getString("language", "ru");
-        String message = plugin.getConfig().getString("messages." + lang + "." + key);
-        
-        if (message == null) {
-            message = plugin.getConfig().getString("messages.en." + key);
-            if (message == null) {
-                plugin.getLogger().warning("Message not found for key: " + key);
-                sender.sendMessage("§cMessage error: " + key);
-                return;
-            }
-        }
-        
-        for (int i = 0; i < placeholders.length; i += 2) {
-            if (i + 1 < placeholders.length) {
-                message = message.replace(placeholders[i], placeholders[i+1]);
-            }
-        }
-        
-        sender.sendMessage(message.replace("&", "§"));
+        String message = plugin.getMessages().render(key, placeholders);
+        sender.sendMessage(message != null ? message : "§cMessage error: " + key);
     }
 
     private void sendFormatted(CommandSender sender, String cmd, String descKey) {
-        String lang = plugin.getConfig().getString("language", "ru");
-        String line = plugin.getConfig().getString("messages." + lang + ".help-line");
-        String desc = plugin.getConfig().getString("messages." + lang + "." + descKey);
-        
-        if (line == null || desc == null) {
-            plugin.getLogger().warning("Help message not found for: " + descKey);
-            return;
+        String desc = plugin.getMessages().render(descKey);
+        String line = desc != null ? plugin.getMessages().render("help-line", "%cmd%", cmd, "%desc%", desc) : null;
+        if (line != null) {
+            sender.sendMessage(line);
         }
-        
-        sender.sendMessage(line.replace("%cmd%", cmd)
-                         .replace("%desc%", desc)
-                         .replace("&", "§"));
     }
-}
\ No newline at end of file
+}
@@ -9,15 +9,29 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.logging.Level;
 
 public class ShortCmdPlugin extends JavaPlugin {
     private FileConfiguration config;
     private File configFile;
-    private File storageFile;
-    private FileConfiguration storage;
-    private File modesFile;
-    private FileConfiguration modes;
+    private ScriptStorage storage;
+    private PlayerModeStore playerModes;
+    private MessageTemplates messages;
+    private ContentCache contentCache;
+    private volatile Blocklist blocklist = Blocklist.compile(Collections.emptyList());
+    private ScriptLibrary scripts;
+    private HostHealth hostHealth;
+    private ScriptFetcher fetcher;
+    private CommandDispatcher dispatcher;
+    private ScriptScheduler scheduler;
+    private ScriptRuns runs;
+    private ScriptCheckpoints checkpoints;
+    private AuditLog auditLog;
+    private CommandResolver commandResolver;
+    private AsyncCommandLane asyncLane;
+    private final Metrics metrics = new Metrics();
+    private MetricsExporter metricsExporter;
 
     @Override
     public void onEnable() {
@@ -41,30 +55,86 @@ public class ShortCmdPlugin extends JavaPlugin {
             // Set default values
             config.addDefault("timeouts.connect", 10000);
             config.addDefault("timeouts.read", 10000);
-            config.addDefault("timeouts.internet-check", 3000);
             config.addDefault("command-delay", 100);
+            config.addDefault("fetch.threads", 2);
+            config.addDefault("fetch.per-host-limit", 2);
+            config.addDefault("fetch.max-response-bytes", 8388608);
+            config.addDefault("fetch.source-timeout-ms", 30000);
+            config.addDefault("fetch.max-sources", 32);
+            config.addDefault("fetch.on-failure", "abort");
+            config.addDefault("dispatch.tick-budget-ms", 10);
+            config.addDefault("dispatch.max-commands-per-tick", 0);
+            config.addDefault("dispatch.pre-resolve", true);
+            config.addDefault("dispatch.async-commands", Collections.emptyList());
+            config.addDefault("dispatch.async-threads", 4);
+            config.addDefault("dispatch.async-max-pending", 1024);
+            config.addDefault("cache.ttl-seconds", 300);
+            config.addDefault("cache.max-bytes", 16777216);
+            config.addDefault("cache.max-entries", 256);
+            config.addDefault("health.failure-threshold", 3);
+            config.addDefault("health.open-seconds", 30);
+            config.addDefault("health.window-seconds", 60);
+            config.addDefault("storage.compact-minutes", 10);
+            config.addDefault("storage.compact-journal-bytes", 4194304);
+            config.addDefault("storage.fsync", false);
+            config.addDefault("storage.compress-min-bytes", 4096);
+            config.addDefault("savecmd.max-bytes", 67108864);
+            config.addDefault("savecmd.max-lines", 1000000);
+            config.addDefault("savecmd.inline-max-lines", 1000);
+            config.addDefault("savecmd.compiled-cache-mb", 32);
+            config.addDefault("modes.flush-delay-ms", 2000);
+            config.addDefault("tab-complete.limit", 50);
+            config.addDefault("metrics.export-seconds", 60);
+            config.addDefault("metrics.file", "metrics.prom");
+            config.addDefault("profile.top", 10);
+            config.addDefault("profile.threshold-ms", 5);
+            config.addDefault("schedule.missed", "skip");
+            config.addDefault("schedule.overlap", "skip");
+            config.addDefault("jobs.duplicate-policy", "queue");
+            config.addDefault("jobs.checkpoint-ms", 1000);
+            config.addDefault("audit.enabled", false);
+            config.addDefault("audit.buffer-size", 8192);
+            config.addDefault("audit.overflow", "drop");
+            config.addDefault("audit.max-file-mb", 16);
+            config.addDefault("audit.max-files", 10);
+            config.addDefault("audit.compress", true);
             config.options().copyDefaults(true);
             saveConfig();
 
-            // Load storage
-            storageFile = new File(getDataFolder(), "storage.yml");
-            if (!storageFile.exists()) {
-                saveResource("storage.yml", false);
-            }
-            storage = YamlConfiguration.loadConfiguration(storageFile);
+            // Load modes lazily, importing modes.yml on first start
+            playerModes = new PlayerModeStore(this);
+            getServer().getPluginManager().registerEvents(playerModes, this);
+            playerModes.preloadOnline();
 
-            // Load modes
-            modesFile = new File(getDataFolder(), "modes.yml");
-            if (!modesFile.exists()) {
-                saveResource("modes.yml", false);
-            }
-            modes = YamlConfiguration.loadConfiguration(modesFile);
+            compileBlocklist();
+            messages = new MessageTemplates(this);
+
+            // Load storage, importing storage.yml on first start
+            storage = new JournalScriptStorage(this, new File(getDataFolder(), "storage"));
+
+            contentCache = new ContentCache(this);
+            hostHealth = new HostHealth(this);
+            fetcher = new ScriptFetcher(this, contentCache, hostHealth, config.getInt("fetch.threads", 2));
+            dispatcher = new CommandDispatcher(this);
+            checkpoints = new ScriptCheckpoints(this);
+            runs = new ScriptRuns(this);
+            commandResolver = new CommandResolver(this);
+            getServer().getPluginManager().registerEvents(commandResolver, this);
+            auditLog = new AuditLog(this);
+            asyncLane = new AsyncCommandLane(this, config.getInt("dispatch.async-threads", 4));
+            scheduler = new ScriptScheduler(this);
+
+            scripts = new ScriptLibrary(this);
+            metricsExporter = new MetricsExporter(this);
 
             // Register command
             ShortCmdCommand cmd = new ShortCmdCommand(this);
             getCommand("shortcmd").setExecutor(cmd);
             getCommand("shortcmd").setTabCompleter(cmd);
 
+            // Start recurring scripts, applying the missed-run policy
+            scheduler.start(cmd::runScheduled);
+
             getLogger().info("ShortCmd enabled successfully!");
         } catch (Exception e) {
             getLogger().log(Level.SEVERE, "Failed to enable plugin", e);
@@ -74,37 +144,109 @@ public class ShortCmdPlugin extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        saveStorage();
-        saveModesConfig();
+        if (fetcher != null) {
+            fetcher.shutdown();
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (asyncLane != null) {
+            asyncLane.shutdown();
+        }
+        if (checkpoints != null) {
+            checkpoints.shutdown();
+        }
+        if (auditLog != null) {
+            auditLog.shutdown();
+        }
+        if (storage != null) {
+            storage.close();
+        }
+        if (playerModes != null) {
+            playerModes.shutdown();
+        }
+        if (metricsExporter != null) {
+            metricsExporter.shutdown();
+        }
         getLogger().info("ShortCmd disabled");
     }
 
-    public void saveStorage() {
-        try {
-            if (storage != null && storageFile != null) {
-                storage.save(storageFile);
-            }
-        } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "Could not save storage.yml", e);
-        }
+    public ScriptFetcher getFetcher() {
+        return fetcher;
+    }
+
+    public ContentCache getContentCache() {
+        return contentCache;
+    }
+
+    /**
+     * Rebuilds the blocklist from {@code blocked-commands}. Called at enable and on reload.
+     */
+    public void compileBlocklist() {
+        blocklist = Blocklist.compile(getConfig().getStringList("blocked-commands"));
     }
 
-    public FileConfiguration getStorage() {
+    public Blocklist getBlocklist() {
+        return blocklist;
+    }
+
+    public ScriptLibrary getScripts() {
+        return scripts;
+    }
+
+    public HostHealth getHostHealth() {
+        return hostHealth;
+    }
+
+    public CommandDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public CommandResolver getCommandResolver() {
+        return commandResolver;
+    }
+
+    public AsyncCommandLane getAsyncLane() {
+        return asyncLane;
+    }
+
+    public ScriptRuns getRuns() {
+        return runs;
+    }
+
+    public ScriptCheckpoints getCheckpoints() {
+        return checkpoints;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public ScriptScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ScriptStorage getStorage() {
         return storage;
     }
 
-    public FileConfiguration getModesConfig() {
-        return modes;
+    public MessageTemplates getMessages() {
+        return messages;
     }
 
-    public void saveModesConfig() {
-        try {
-            if (modes != null && modesFile != null) {
-                modes.save(modesFile);
-            }
-        } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "Could not save modes.yml", e);
-        }
+    public PlayerModeStore getPlayerModes() {
+        return playerModes;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public MetricsExporter getMetricsExporter() {
+        return metricsExporter;
     }
 
     @Override
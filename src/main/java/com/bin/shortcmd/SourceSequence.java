@@ -0,0 +1,102 @@
+package com.bin.shortcmd;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * The commands of several sources in their given order while the sources are
+ * still downloading. A source's lines become available as soon as it and all
+ * sources before it are done, so dispatch starts long before the slowest
+ * download finishes.
+ * <p>
+ * A failed source is reported to {@code onFailure}; it is then either
+ * skipped or stops the sequence, depending on {@code fetch.on-failure}.
+ * Each source's lines pass through {@code expand} on their own, so script
+ * variables do not leak from one source into the next.
+ */
+public class SourceSequence implements Iterator<String>, AutoCloseable, ScriptJob.Deferred {
+    private final List<FetchedSource<List<String>>> sources;
+    private final boolean skipFailed;
+    private final BiConsumer<String, Throwable> onFailure;
+    private final UnaryOperator<Iterator<String>> expand;
+    private Iterator<String> current = Collections.emptyIterator();
+    private int index;
+    private boolean aborted;
+
+    public SourceSequence(List<FetchedSource<List<String>>> sources, boolean skipFailed,
+                          BiConsumer<String, Throwable> onFailure, UnaryOperator<Iterator<String>> expand) {
+        this.sources = sources;
+        this.skipFailed = skipFailed;
+        this.onFailure = onFailure;
+        this.expand = expand;
+    }
+
+    @Override
+    public boolean isReady() {
+        while (!current.hasNext() && index < sources.size()) {
+            FetchedSource<List<String>> source = sources.get(index);
+            if (!source.isDone()) {
+                return false;
+            }
+            index++;
+            Throwable error = source.getError();
+            if (error == null) {
+                closeCurrent();
+                current = expand.apply(source.getResult().iterator());
+                continue;
+            }
+            onFailure.accept(source.getLink(), error);
+            if (!skipFailed) {
+                aborted = true;
+                close();
+                index = sources.size();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether lines remain, including lines of sources still downloading.
+     */
+    @Override
+    public boolean hasNext() {
+        return current.hasNext() || index < sources.size();
+    }
+
+    @Override
+    public String next() {
+        if (!isReady() || !current.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Stops the downloads that have not been consumed yet.
+     */
+    @Override
+    public void close() {
+        closeCurrent();
+        for (int i = index; i < sources.size(); i++) {
+            sources.get(i).cancel();
+        }
+    }
+
+    private void closeCurrent() {
+        if (current instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) current).close();
+            } catch (Exception ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+}
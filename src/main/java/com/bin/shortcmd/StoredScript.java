@@ -0,0 +1,128 @@
+package com.bin.shortcmd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persisted form of a compiled script: either its command lines, a body in
+ * the storage's {@link ScriptPack}, or the name of a file under
+ * {@code scripts/} holding them, plus metadata.
+ * <p>
+ * The hash identifies the body, so storage shares one instance between all
+ * names saved with the same script.
+ */
+public final class StoredScript {
+    private final List<String> lines;
+    private final ScriptPack pack;
+    private final long offset;
+    private final long length;
+    private final boolean compressed;
+    private final String file;
+    private final int lineCount;
+    private final String hash;
+    private final long bytes;
+
+    public StoredScript(List<String> lines, String hash, long bytes) {
+        this(Collections.unmodifiableList(lines), null, 0, 0, false, null, lines.size(), hash, bytes);
+    }
+
+    private StoredScript(List<String> lines, ScriptPack pack, long offset, long length, boolean compressed,
+                         String file, int lineCount, String hash, long bytes) {
+        this.lines = lines;
+        this.pack = pack;
+        this.offset = offset;
+        this.length = length;
+        this.compressed = compressed;
+        this.file = file;
+        this.lineCount = lineCount;
+        this.hash = hash;
+        this.bytes = bytes;
+    }
+
+    public static StoredScript ofFile(String file, int lineCount, String hash, long bytes) {
+        return new StoredScript(null, null, 0, 0, false, file, lineCount, hash, bytes);
+    }
+
+    static StoredScript ofPack(ScriptPack pack, long offset, long length, boolean compressed, int lineCount,
+                               String hash, long bytes) {
+        return new StoredScript(null, pack, offset, length, compressed, null, lineCount, hash, bytes);
+    }
+
+    public boolean isFileBacked() {
+        return file != null;
+    }
+
+    /**
+     * Whether the lines are still in the mapped pack and get decoded by
+     * {@link #getLines()}.
+     */
+    public boolean isPacked() {
+        return pack != null;
+    }
+
+    /**
+     * Whether the body is deflated in the pack.
+     */
+    boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * The number of bytes the body takes in the pack.
+     */
+    long getPackedLength() {
+        return length;
+    }
+
+    /**
+     * The command lines, or {@code null} for file-backed scripts. Packed
+     * scripts are decoded on every call, so callers should keep the result.
+     *
+     * @throws UncheckedIOException if the packed body cannot be read
+     */
+    public List<String> getLines() {
+        if (pack == null) {
+            return lines;
+        }
+        try {
+            return Collections.unmodifiableList(pack.readLines(offset, length, compressed, bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the body of an inline or packed script, deflated if
+     * {@code compress}, and returns the number of bytes written. A packed body
+     * already in that form is copied without decoding it.
+     */
+    long writeBody(OutputStream out, boolean compress) throws IOException {
+        if (pack != null && compress == compressed) {
+            pack.copyTo(offset, length, out);
+            return length;
+        }
+        return ScriptPack.writeBody(out, getLines(), compress);
+    }
+
+    /**
+     * The script file name relative to {@code scripts/}, or {@code null} for inline scripts.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
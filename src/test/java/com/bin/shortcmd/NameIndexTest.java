@@ -0,0 +1,39 @@
+package com.bin.shortcmd;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class NameIndexTest {
+    @Test
+    public void completesNamesThatSortBeforeThePrefixInNaturalOrder() {
+        NameIndex index = new NameIndex();
+        index.add("Test");
+        index.add("AB");
+        index.add("abc");
+
+        assertEquals(Collections.singletonList("Test"), index.complete("test", 10));
+        assertEquals(Arrays.asList("AB", "abc"), index.complete("ab", 10));
+        assertEquals(Arrays.asList("AB", "abc"), index.complete("AB", 10));
+        assertEquals(Collections.singletonList("AB"), index.complete("a", 1));
+    }
+
+    @Test
+    public void keepsNamesUntilEveryRegistrationIsRemoved() {
+        NameIndex index = new NameIndex();
+        index.add("deploy");
+        index.add("deploy");
+        index.add("Deploy");
+        assertEquals(2, index.size());
+
+        index.remove("deploy");
+        assertEquals(Arrays.asList("Deploy", "deploy"), index.complete("DEP", 10));
+        index.remove("deploy");
+        index.remove("missing");
+        assertEquals(Collections.singletonList("Deploy"), index.complete("dep", 10));
+        assertEquals(1, index.size());
+    }
+}